@@ -0,0 +1,332 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.lang.JoseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Prefetches the key sets that clients publish at the {@code software_jwks_uri} of their software statements, so that
+ * they are at hand when the client registers and authenticates with {@code private_key_jwt} right afterwards.
+ *
+ * {@link #prefetch(JwtClaims)} only queues a fetch and never waits for the network. A URI that is cached, or already
+ * being fetched or queued, is not fetched again, at most {@code maxConcurrentFetches} fetches run at the same time and
+ * at most {@code maxEntries} wait for one of them. Each key set is kept for the time to live from when it was fetched,
+ * or for the max-age of its Cache-Control header if that is shorter, and is revalidated with a conditional request
+ * when its URI is prefetched after that. When the cache is full, the least recently used key set is evicted. A cache
+ * with a maximum size of 0 is disabled.
+ *
+ * A URI that could not be fetched is not tried again for {@link #RETRY_AFTER_FAILURE}. These failures are remembered
+ * apart from the key sets, in a map of a tenth of the size, so that a burst of bad URIs never evicts a key set.
+ *
+ * Only https URIs are fetched.
+ */
+public class ClientJwksCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientJwksCache.class);
+
+    public static final String SOFTWARE_JWKS_URI = "software_jwks_uri";
+    public static final Duration RETRY_AFTER_FAILURE = Duration.ofSeconds(30);
+
+    /**
+     * A key set of a client, as published at its JWKS URI.
+     */
+    public static final class ClientJwks {
+        private final String jwksUri;
+        private final String jwks;
+        private final String etag;
+        private final String lastModified;
+        private final Instant fetchedAt;
+        private final Instant expiresAt;
+
+        private ClientJwks(String jwksUri, String jwks, String etag, String lastModified, Instant fetchedAt,
+                           Instant expiresAt) {
+            this.jwksUri = jwksUri;
+            this.jwks = jwks;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getJwksUri() {
+            return jwksUri;
+        }
+
+        public String getJwks() {
+            return jwks;
+        }
+
+        public Instant getFetchedAt() {
+            return fetchedAt;
+        }
+
+        public Instant getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    private final Function<URI, JwksFetcher> fetchers;
+    private final Executor executor;
+    private final int maxEntries;
+    private final int maxFailures;
+    private final Duration timeToLive;
+    private final int maxConcurrentFetches;
+    private final Clock clock;
+
+    // Guarded by entries, as are the times until which URIs that could not be fetched are not tried again
+    private final Map<String, ClientJwks> entries;
+    private final Map<String, Instant> failures;
+    private final Set<String> inProgress = new HashSet<>();
+    private final Queue<String> queued = new ArrayDeque<>();
+    private int running;
+
+    private final LongAdder fetched = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Creates a cache that fetches key sets with the given client. Fetches are started on the common fork-join pool,
+     * so that a prefetch never waits for the client to open a connection.
+     */
+    public ClientJwksCache(HttpClient httpClient, int maxEntries, Duration timeToLive, int maxConcurrentFetches) {
+        this(httpClient, maxEntries, timeToLive, maxConcurrentFetches, HttpJwksFetcher.DEFAULT_MAX_BODY_BYTES);
+    }
+
+    /**
+     * Creates a cache that fetches key sets with the given client, and counts a key set larger than the given number
+     * of bytes as a failed fetch.
+     */
+    public ClientJwksCache(HttpClient httpClient, int maxEntries, Duration timeToLive, int maxConcurrentFetches,
+                           int maxJwksBytes) {
+        this(jwksUri -> new HttpJwksFetcher(httpClient, jwksUri, maxJwksBytes), ForkJoinPool.commonPool(), maxEntries,
+                timeToLive, maxConcurrentFetches, Clock.systemUTC());
+    }
+
+    ClientJwksCache(Function<URI, JwksFetcher> fetchers, Executor executor, int maxEntries, Duration timeToLive,
+                    int maxConcurrentFetches, Clock clock) {
+        this.fetchers = fetchers;
+        this.executor = executor;
+        this.maxEntries = maxEntries;
+        this.maxFailures = Math.max(1, maxEntries / 10);
+        this.timeToLive = timeToLive;
+        this.maxConcurrentFetches = maxConcurrentFetches;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<String, ClientJwks>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ClientJwks> eldest) {
+                return size() > ClientJwksCache.this.maxEntries;
+            }
+        };
+        this.failures = new LinkedHashMap<String, Instant>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Instant> eldest) {
+                return size() > ClientJwksCache.this.maxFailures;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Queues a fetch of the {@code software_jwks_uri} of a validated software statement, if it has one.
+     *
+     * @return true if a fetch was started or queued
+     */
+    public boolean prefetch(JwtClaims claims) {
+        if (!isEnabled()) {
+            return false;
+        }
+        Object jwksUri = claims.getClaimValue(SOFTWARE_JWKS_URI);
+        return jwksUri instanceof String && prefetch((String) jwksUri);
+    }
+
+    /**
+     * Queues a fetch of the key set at the given URI, unless it is cached, already being fetched or queued, or failed
+     * less than {@link #RETRY_AFTER_FAILURE} ago.
+     *
+     * @return true if a fetch was started or queued
+     */
+    public boolean prefetch(String jwksUri) {
+        if (!isEnabled() || !isFetchable(jwksUri)) {
+            return false;
+        }
+
+        synchronized (entries) {
+            Instant now = clock.instant();
+            ClientJwks cached = entries.get(jwksUri);
+            if (cached != null && cached.expiresAt.isAfter(now)) {
+                return false;
+            }
+            Instant retryAt = failures.get(jwksUri);
+            if (retryAt != null && retryAt.isAfter(now)) {
+                return false;
+            }
+            if (!inProgress.add(jwksUri)) {
+                return false;
+            }
+            if (running >= maxConcurrentFetches) {
+                if (queued.size() >= maxEntries) {
+                    inProgress.remove(jwksUri);
+                    dropped.increment();
+                    return false;
+                }
+                queued.add(jwksUri);
+                return true;
+            }
+            running++;
+        }
+        start(jwksUri);
+        return true;
+    }
+
+    /**
+     * Returns the cached key set of the given URI, or null if it has not been fetched or has expired.
+     */
+    public ClientJwks get(String jwksUri) {
+        synchronized (entries) {
+            ClientJwks cached = entries.get(jwksUri);
+            if (cached == null || !cached.expiresAt.isAfter(clock.instant())) {
+                return null;
+            }
+            return cached;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // URIs that could not be fetched and are remembered apart from the key sets
+    public int getFailedUriCount() {
+        synchronized (entries) {
+            return failures.size();
+        }
+    }
+
+    public long getFetchedCount() {
+        return fetched.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Returns the number of prefetches that were dropped because too many were queued already.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private static boolean isFetchable(String jwksUri) {
+        try {
+            URI uri = new URI(jwksUri);
+            return "https".equalsIgnoreCase(uri.getScheme()) && uri.getHost() != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void start(String jwksUri) {
+        try {
+            executor.execute(() -> fetch(jwksUri));
+        } catch (RuntimeException e) {
+            complete(jwksUri, null, null, e);
+        }
+    }
+
+    private void fetch(String jwksUri) {
+        ClientJwks previous;
+        synchronized (entries) {
+            previous = entries.get(jwksUri);
+        }
+
+        CompletableFuture<JwksFetcher.Response> response;
+        try {
+            JwksFetcher fetcher = fetchers.apply(URI.create(jwksUri));
+            response = fetcher.fetch(previous != null ? previous.etag : null,
+                    previous != null ? previous.lastModified : null);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((result, error) -> complete(jwksUri, previous, result, error));
+    }
+
+    private void complete(String jwksUri, ClientJwks previous, JwksFetcher.Response response, Throwable error) {
+        Instant now = clock.instant();
+        ClientJwks clientJwks = null;
+        try {
+            if (error != null) {
+                throw error;
+            }
+            clientJwks = toClientJwks(jwksUri, previous, response, now);
+            fetched.increment();
+        } catch (Throwable e) {
+            logger.debug("Unable to prefetch client JWKS from {}", jwksUri, e);
+            failed.increment();
+        }
+
+        String next;
+        synchronized (entries) {
+            if (clientJwks != null) {
+                entries.put(jwksUri, clientJwks);
+                failures.remove(jwksUri);
+            } else {
+                failures.put(jwksUri, now.plus(RETRY_AFTER_FAILURE));
+            }
+            inProgress.remove(jwksUri);
+            next = queued.poll();
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    private ClientJwks toClientJwks(String jwksUri, ClientJwks previous, JwksFetcher.Response response, Instant now)
+            throws JoseException {
+        if (response.isNotModified()) {
+            if (previous == null) {
+                throw new JoseException("Not Modified without a cached JWKS from " + jwksUri);
+            }
+            return new ClientJwks(jwksUri, previous.jwks, previous.etag, previous.lastModified, now,
+                    now.plus(getTimeToLive(response)));
+        }
+
+        // Only valid key sets are cached
+        new JsonWebKeySet(response.getJwks());
+        return new ClientJwks(jwksUri, response.getJwks(), response.getEtag(), response.getLastModified(), now,
+                now.plus(getTimeToLive(response)));
+    }
+
+    // A client can shorten the time to live of its key set with Cache-Control, but not extend it
+    private Duration getTimeToLive(JwksFetcher.Response response) {
+        Duration maxAge = response.getMaxAge();
+        return maxAge != null && maxAge.compareTo(timeToLive) < 0 ? maxAge : timeToLive;
+    }
+}
@@ -0,0 +1,149 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.lang.JoseException;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Fetches a JSON Web Key Set with the non-blocking {@link HttpClient} of the JDK, as a conditional request with the
+ * validators of the cached key set. One client can be shared by all issuers.
+ *
+ * The download is cancelled as soon as the body exceeds the maximum size, and the fetch fails, so that a broken or
+ * malicious endpoint cannot make the service hold an arbitrarily large response.
+ */
+public class HttpJwksFetcher implements JwksFetcher {
+
+    public static final int DEFAULT_MAX_BODY_BYTES = 64*1024;
+
+    private static final Duration requestTimeout = Duration.ofSeconds(10);
+
+    private final HttpClient httpClient;
+    private final URI jwksUri;
+    private final int maxBodyBytes;
+
+    public HttpJwksFetcher(HttpClient httpClient, URI jwksUri) {
+        this(httpClient, jwksUri, DEFAULT_MAX_BODY_BYTES);
+    }
+
+    public HttpJwksFetcher(HttpClient httpClient, URI jwksUri, int maxBodyBytes) {
+        this.httpClient = httpClient;
+        this.jwksUri = jwksUri;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    @Override
+    public CompletableFuture<Response> fetch(String etag, String lastModified) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(jwksUri)
+                .timeout(requestTimeout)
+                .header("Accept", "application/json, application/jwk-set+json");
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.header("If-Modified-Since", lastModified);
+        }
+
+        return httpClient.sendAsync(request.build(), responseInfo -> new LimitedBodySubscriber(maxBodyBytes))
+                .thenApply(response -> {
+                    Duration maxAge = getMaxAge(response);
+                    if (response.statusCode() == 304) {
+                        return Response.notModified(maxAge);
+                    }
+                    if (response.statusCode() / 100 != 2) {
+                        throw new CompletionException(new JoseException(
+                                "Unable to load JWKS from " + jwksUri + ": HTTP status " + response.statusCode()));
+                    }
+                    return Response.ok(response.body(), response.headers().firstValue("ETag").orElse(null),
+                            response.headers().firstValue("Last-Modified").orElse(null), maxAge);
+                });
+    }
+
+    // The max-age directive of the Cache-Control header, no-cache and no-store count as 0
+    private static Duration getMaxAge(HttpResponse<?> response) {
+        for (String value : response.headers().allValues("Cache-Control")) {
+            for (String directive : value.split(",")) {
+                String name = directive.trim().toLowerCase(Locale.ROOT);
+                if (name.equals("no-cache") || name.equals("no-store")) {
+                    return Duration.ZERO;
+                }
+                if (name.startsWith("max-age=")) {
+                    try {
+                        return Duration.ofSeconds(Math.max(0, Long.parseLong(name.substring("max-age=".length()))));
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return jwksUri.toString();
+    }
+
+    // Collects the body as UTF-8, and cancels the download once it exceeds the maximum size
+    private final class LimitedBodySubscriber implements HttpResponse.BodySubscriber<String> {
+        private final int maxBytes;
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private final CompletableFuture<String> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        private LimitedBodySubscriber(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            if (body.isDone()) {
+                return;
+            }
+            for (ByteBuffer buffer : buffers) {
+                if (received.size() + buffer.remaining() > maxBytes) {
+                    subscription.cancel();
+                    body.completeExceptionally(new JoseException("Unable to load JWKS from " + jwksUri +
+                            ": the response exceeds the limit of " + maxBytes + " bytes"));
+                    return;
+                }
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                received.write(bytes, 0, bytes.length);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            body.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(received.toString(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public CompletionStage<String> getBody() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jws.AlgorithmIdentifiers;
+
+import java.util.List;
+
+/**
+ * The settings of a trusted issuer, see {@link TrustedIssuer#TrustedIssuer(IssuerConfiguration, java.net.http.HttpClient)}.
+ * Only the name and the JWKS URI have to be set.
+ */
+public class IssuerConfiguration {
+
+    private String name;
+    private String jwksUri;
+    private List<String> allowedAlgorithms = List.of(AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+    private int maxAgeSeconds = 5*60;
+    private long jwksCacheSeconds = 3600;
+    private long jwksMinRefreshSeconds = 30;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getJwksUri() {
+        return jwksUri;
+    }
+
+    public void setJwksUri(String jwksUri) {
+        this.jwksUri = jwksUri;
+    }
+
+    public List<String> getAllowedAlgorithms() {
+        return allowedAlgorithms;
+    }
+
+    public void setAllowedAlgorithms(List<String> allowedAlgorithms) {
+        this.allowedAlgorithms = allowedAlgorithms;
+    }
+
+    public int getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public void setMaxAgeSeconds(int maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    public long getJwksCacheSeconds() {
+        return jwksCacheSeconds;
+    }
+
+    public void setJwksCacheSeconds(long jwksCacheSeconds) {
+        this.jwksCacheSeconds = jwksCacheSeconds;
+    }
+
+    public long getJwksMinRefreshSeconds() {
+        return jwksMinRefreshSeconds;
+    }
+
+    public void setJwksMinRefreshSeconds(long jwksMinRefreshSeconds) {
+        this.jwksMinRefreshSeconds = jwksMinRefreshSeconds;
+    }
+}
@@ -0,0 +1,55 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwt.consumer.ErrorCodeValidator;
+import org.jose4j.jwt.consumer.ErrorCodes;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtContext;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The issuers whose software statements are accepted, looked up by the unverified iss claim of a token.
+ *
+ * The key set of an issuer is only fetched when the first of its tokens is validated, so issuers that are configured
+ * but not used only cost their validator.
+ */
+public class IssuerRegistry {
+
+    private final Map<String, TrustedIssuer> issuersByName = new HashMap<>();
+
+    public IssuerRegistry(Collection<TrustedIssuer> issuers) {
+        for (TrustedIssuer issuer : issuers) {
+            if (issuersByName.put(issuer.getName(), issuer) != null) {
+                throw new IllegalArgumentException("Issuer " + issuer.getName() + " is configured more than once");
+            }
+        }
+    }
+
+    public Collection<TrustedIssuer> getIssuers() {
+        return Collections.unmodifiableCollection(issuersByName.values());
+    }
+
+    /**
+     * Returns the issuer of a token returned by {@link SsaValidator#parse(String)}.
+     */
+    public TrustedIssuer getIssuer(JwtContext jwtContext) throws InvalidJwtException {
+        String issuerName = SsaValidator.getIssuer(jwtContext);
+        if (issuerName == null) {
+            throw issuerException(ErrorCodes.ISSUER_MISSING, "No Issuer (iss) claim present", jwtContext);
+        }
+
+        TrustedIssuer issuer = issuersByName.get(issuerName);
+        if (issuer == null) {
+            throw issuerException(ErrorCodes.ISSUER_INVALID, "Issuer (iss) claim value (" + issuerName + ") is not trusted", jwtContext);
+        }
+        return issuer;
+    }
+
+    private static InvalidJwtException issuerException(int errorCode, String message, JwtContext jwtContext) {
+        return new InvalidJwtException(message,
+                Collections.singletonList(new ErrorCodeValidator.Error(errorCode, message)), jwtContext);
+    }
+}
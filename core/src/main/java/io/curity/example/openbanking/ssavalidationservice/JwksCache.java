@@ -0,0 +1,317 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.lang.JoseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Non-blocking cache for the JSON Web Key Set of one issuer.
+ *
+ * Keys are loaded with a {@link JwksFetcher}. Once a key set has been loaded it is served until it is replaced, even
+ * if it has expired. An expired key set triggers a refresh in the background (stale-while-revalidate). Concurrent
+ * callers share a single fetch, and no refresh starts less than the minimum refresh interval after the previous one,
+ * whether it was caused by an expired key set or by a token with an unknown kid. While the issuer is down, the stale
+ * key set is served, or, if there is none, callers fail right away with the error of the last refresh.
+ * Refreshes are conditional requests with the ETag and Last-Modified of the cached key set, so that re-checking an
+ * unchanged key set only costs a 304 Not Modified.
+ *
+ * With a snapshot file, the last good key set is also written to disk after every refresh and loaded at startup, so
+ * that a new node can validate tokens before, or without, reaching the issuer.
+ *
+ * Every key set is indexed into {@link VerificationKeys} when it is loaded, so that no JSON is handled per token.
+ */
+public class JwksCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwksCache.class);
+
+    /**
+     * Called after every refresh, for example to record its latency.
+     */
+    @FunctionalInterface
+    public interface RefreshListener {
+        void onRefresh(boolean success, long durationNanos);
+    }
+
+    private final JwksFetcher fetcher;
+    private final Duration cacheDuration;
+    private final Duration minRefreshInterval;
+    private final Clock clock;
+
+    private final AtomicReference<CachedKeySet> cachedKeySet = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<VerificationKeys>> inFlightRefresh = new AtomicReference<>();
+    private final List<Runnable> keySetChangeListeners = new CopyOnWriteArrayList<>();
+    private final List<RefreshListener> refreshListeners = new CopyOnWriteArrayList<>();
+    private volatile Instant lastRefresh = Instant.MIN;
+    private volatile Throwable lastError;
+    private volatile Path snapshotFile;
+
+    public JwksCache(HttpClient httpClient, String jwksUri, Duration cacheDuration, Duration minRefreshInterval) {
+        this(new HttpJwksFetcher(httpClient, URI.create(jwksUri)), cacheDuration, minRefreshInterval);
+    }
+
+    public JwksCache(JwksFetcher fetcher, Duration cacheDuration, Duration minRefreshInterval) {
+        this(fetcher, cacheDuration, minRefreshInterval, Clock.systemUTC());
+    }
+
+    JwksCache(JwksFetcher fetcher, Duration cacheDuration, Duration minRefreshInterval, Clock clock) {
+        this.fetcher = fetcher;
+        this.cacheDuration = cacheDuration;
+        this.minRefreshInterval = minRefreshInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Registers a listener that is called whenever a refresh returns a key set that differs from the cached one.
+     */
+    public void addKeySetChangeListener(Runnable listener) {
+        keySetChangeListeners.add(listener);
+    }
+
+    public void addRefreshListener(RefreshListener listener) {
+        refreshListeners.add(listener);
+    }
+
+    /**
+     * Loads the key set from the given snapshot file, unless it was fetched longer than the maximum staleness ago, and
+     * writes every key set that is fetched from now on to the file. A snapshot that has expired is served while it is
+     * refreshed, like any other expired key set.
+     *
+     * @return true if a key set was loaded
+     */
+    public boolean loadSnapshot(Path file, Duration maxStaleness) {
+        snapshotFile = file;
+
+        JwksSnapshot snapshot;
+        try {
+            snapshot = JwksSnapshot.read(file);
+        } catch (IOException | JoseException e) {
+            logger.warn("Unable to read JWKS snapshot {}", file, e);
+            return false;
+        }
+        if (snapshot == null) {
+            return false;
+        }
+
+        Instant fetchedAt = snapshot.getFetchedAt();
+        if (fetchedAt.plus(maxStaleness).isBefore(clock.instant())) {
+            logger.info("Ignoring JWKS snapshot {} from {}, which is too old", file, fetchedAt);
+            return false;
+        }
+        try {
+            VerificationKeys keys = new VerificationKeys(new JsonWebKeySet(snapshot.json).getJsonWebKeys());
+            cachedKeySet.compareAndSet(null, new CachedKeySet(snapshot.json, keys, fetchedAt,
+                    fetchedAt.plus(cacheDuration), snapshot.etag, snapshot.lastModified));
+            logger.info("Loaded JWKS snapshot {} from {}", file, fetchedAt);
+            return true;
+        } catch (JoseException e) {
+            logger.warn("Ignoring invalid JWKS snapshot {}", file, e);
+            return false;
+        }
+    }
+
+    public Duration getMinRefreshInterval() {
+        return minRefreshInterval;
+    }
+
+    /**
+     * Returns the time since the cached key set was fetched, or null if none has been loaded yet.
+     */
+    public Duration getKeySetAge() {
+        CachedKeySet current = cachedKeySet.get();
+        return current != null ? Duration.between(current.fetchedAt, clock.instant()) : null;
+    }
+
+    /**
+     * Returns the cached keys. Only waits for the network if no key set has been loaded yet.
+     */
+    public CompletableFuture<VerificationKeys> getVerificationKeys() {
+        CachedKeySet current = cachedKeySet.get();
+        if (current == null) {
+            Throwable error = lastError;
+            if (error != null && inFlightRefresh.get() == null && isRateLimited()) {
+                return CompletableFuture.failedFuture(error);
+            }
+            return refresh().copy();
+        }
+
+        if (current.isExpired(clock.instant()) && (inFlightRefresh.get() != null || !isRateLimited())) {
+            // Keep serving the last good key set while the refresh is running
+            refresh().whenComplete((keys, error) -> {
+                if (error != null) {
+                    logger.warn("Background refresh of JWKS from {} failed", fetcher, unwrap(error));
+                }
+            });
+        }
+        return CompletableFuture.completedFuture(current.keys);
+    }
+
+    /**
+     * Returns the cached keys, refreshing them first if none of them has the given kid and the minimum refresh
+     * interval has passed since the last refresh.
+     */
+    public CompletableFuture<VerificationKeys> getVerificationKeys(String kid) {
+        return getVerificationKeys().thenCompose(keys -> {
+            if (kid == null || keys.containsKeyId(kid)) {
+                return CompletableFuture.completedFuture(keys);
+            }
+            return refreshForUnknownKeyId(keys);
+        });
+    }
+
+    private CompletableFuture<VerificationKeys> refreshForUnknownKeyId(VerificationKeys keys) {
+        CompletableFuture<VerificationKeys> inFlight = inFlightRefresh.get();
+        if (inFlight != null) {
+            return inFlight.copy();
+        }
+
+        // Rate-limit refreshes to protect the issuer from tokens with made-up kids
+        if (isRateLimited()) {
+            return CompletableFuture.completedFuture(keys);
+        }
+        return refresh().copy();
+    }
+
+    private boolean isRateLimited() {
+        return lastRefresh.plus(minRefreshInterval).isAfter(clock.instant());
+    }
+
+    private CompletableFuture<VerificationKeys> refresh() {
+        for (;;) {
+            CompletableFuture<VerificationKeys> inFlight = inFlightRefresh.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+
+            CompletableFuture<VerificationKeys> result = new CompletableFuture<>();
+            if (!inFlightRefresh.compareAndSet(null, result)) {
+                continue;
+            }
+
+            lastRefresh = clock.instant();
+            long start = System.nanoTime();
+            CachedKeySet current = cachedKeySet.get();
+            fetch(current).whenComplete((response, error) -> complete(result, current, response, error, start));
+            return result;
+        }
+    }
+
+    // Asks the issuer to only send the key set if it differs from the current one
+    private CompletableFuture<JwksFetcher.Response> fetch(CachedKeySet current) {
+        try {
+            return fetcher.fetch(current != null ? current.etag : null, current != null ? current.lastModified : null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void complete(CompletableFuture<VerificationKeys> result, CachedKeySet current,
+                          JwksFetcher.Response response, Throwable error, long start) {
+        CachedKeySet keySet = null;
+        if (error == null) {
+            try {
+                keySet = toKeySet(current, response);
+            } catch (JoseException e) {
+                error = e;
+            }
+        }
+        boolean success = keySet != null;
+        long duration = System.nanoTime() - start;
+        refreshListeners.forEach(listener -> listener.onRefresh(success, duration));
+
+        if (!success) {
+            // The interval until the next refresh counts from the failure, not from the start of a slow fetch
+            Throwable cause = unwrap(error);
+            lastError = cause instanceof JoseException
+                    ? cause : new JoseException("Unable to load JWKS from " + fetcher, cause);
+            lastRefresh = clock.instant();
+            inFlightRefresh.set(null);
+            result.completeExceptionally(lastError);
+            return;
+        }
+
+        CachedKeySet previous = cachedKeySet.getAndSet(keySet);
+        lastError = null;
+        inFlightRefresh.set(null);
+        if (previous != null && !previous.json.equals(keySet.json)) {
+            keySetChangeListeners.forEach(Runnable::run);
+        }
+        result.complete(keySet.keys);
+        writeSnapshot(keySet);
+    }
+
+    private CachedKeySet toKeySet(CachedKeySet current, JwksFetcher.Response response) throws JoseException {
+        Instant now = clock.instant();
+        if (response.isNotModified()) {
+            if (current == null) {
+                throw new JoseException("Unable to load JWKS from " + fetcher + ": not modified, but nothing is cached");
+            }
+            return new CachedKeySet(current.json, current.keys, now, now.plus(cacheDuration),
+                    current.etag, current.lastModified);
+        }
+        VerificationKeys keys = new VerificationKeys(new JsonWebKeySet(response.getJwks()).getJsonWebKeys());
+        return new CachedKeySet(response.getJwks(), keys, now, now.plus(cacheDuration),
+                response.getEtag(), response.getLastModified());
+    }
+
+    // The file is written on another thread, it is only needed when the next node starts
+    private void writeSnapshot(CachedKeySet keySet) {
+        Path file = snapshotFile;
+        if (file == null) {
+            return;
+        }
+        JwksSnapshot snapshot = new JwksSnapshot(keySet.json, keySet.fetchedAt.getEpochSecond(),
+                keySet.etag, keySet.lastModified);
+        CompletableFuture.runAsync(() -> {
+            try {
+                snapshot.write(file);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).whenComplete((written, error) -> {
+            if (error != null) {
+                logger.warn("Unable to write JWKS snapshot {}", file, unwrap(error));
+            }
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static final class CachedKeySet {
+        private final String json;
+        private final VerificationKeys keys;
+        private final Instant fetchedAt;
+        private final Instant expiresAt;
+        private final String etag;
+        private final String lastModified;
+
+        private CachedKeySet(String json, VerificationKeys keys, Instant fetchedAt, Instant expiresAt,
+                             String etag, String lastModified) {
+            this.json = json;
+            this.keys = keys;
+            this.fetchedAt = fetchedAt;
+            this.expiresAt = expiresAt;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        private boolean isExpired(Instant now) {
+            return !now.isBefore(expiresAt);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fetches the JSON Web Key Set of an issuer for a {@link JwksCache}, see {@link HttpJwksFetcher} for fetching it over
+ * HTTP. Other implementations serve key sets that are not fetched over the network, for example in tests.
+ */
+@FunctionalInterface
+public interface JwksFetcher {
+
+    /**
+     * Fetches the key set, unless it still matches the given validators of the cached key set.
+     *
+     * @param etag the ETag of the cached key set, or null
+     * @param lastModified the Last-Modified date of the cached key set, or null
+     * @return the response, which completes exceptionally if the key set could not be fetched
+     */
+    CompletableFuture<Response> fetch(String etag, String lastModified);
+
+    /**
+     * Returns a fetcher that always serves the given key set.
+     */
+    static JwksFetcher of(String jwks) {
+        return (etag, lastModified) -> CompletableFuture.completedFuture(Response.ok(jwks, null, null));
+    }
+
+    final class Response {
+        private final String jwks;
+        private final String etag;
+        private final String lastModified;
+        private final Duration maxAge;
+
+        private Response(String jwks, String etag, String lastModified, Duration maxAge) {
+            this.jwks = jwks;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.maxAge = maxAge;
+        }
+
+        public static Response ok(String jwks, String etag, String lastModified) {
+            return new Response(jwks, etag, lastModified, null);
+        }
+
+        /**
+         * @param maxAge the max-age of the Cache-Control header, or null
+         */
+        public static Response ok(String jwks, String etag, String lastModified, Duration maxAge) {
+            return new Response(jwks, etag, lastModified, maxAge);
+        }
+
+        /**
+         * The cached key set is still current.
+         */
+        public static Response notModified() {
+            return new Response(null, null, null, null);
+        }
+
+        public static Response notModified(Duration maxAge) {
+            return new Response(null, null, null, maxAge);
+        }
+
+        public boolean isNotModified() {
+            return jwks == null;
+        }
+
+        public String getJwks() {
+            return jwks;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public Duration getMaxAge() {
+            return maxAge;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.json.JsonUtil;
+import org.jose4j.lang.JoseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The last good JWKS of an issuer as stored in a local file, together with the time it was fetched and the validators
+ * for conditional requests. The file is a JSON object with the members {@code jwks}, {@code fetched_at} (in seconds
+ * since the epoch) and, if known, {@code etag} and {@code last_modified}.
+ */
+final class JwksSnapshot {
+
+    final String json;
+    final long fetchedAtSeconds;
+    final String etag;
+    final String lastModified;
+
+    JwksSnapshot(String json, long fetchedAtSeconds, String etag, String lastModified) {
+        this.json = json;
+        this.fetchedAtSeconds = fetchedAtSeconds;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    Instant getFetchedAt() {
+        return Instant.ofEpochSecond(fetchedAtSeconds);
+    }
+
+    /**
+     * Returns the snapshot in the given file, or null if there is none.
+     */
+    static JwksSnapshot read(Path file) throws IOException, JoseException {
+        String content;
+        try {
+            content = Files.readString(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        Map<String, Object> members = JsonUtil.parseJson(content);
+        if (!(members.get("jwks") instanceof String) || !(members.get("fetched_at") instanceof Number)) {
+            throw new JoseException("The JWKS snapshot lacks jwks or fetched_at");
+        }
+        return new JwksSnapshot((String) members.get("jwks"), ((Number) members.get("fetched_at")).longValue(),
+                (String) members.get("etag"), (String) members.get("last_modified"));
+    }
+
+    /**
+     * Replaces the given file atomically, so that a node that stops while writing never leaves a partial snapshot.
+     */
+    void write(Path file) throws IOException {
+        Map<String, Object> members = new LinkedHashMap<>();
+        members.put("jwks", json);
+        members.put("fetched_at", fetchedAtSeconds);
+        if (etag != null) {
+            members.put("etag", etag);
+        }
+        if (lastModified != null) {
+            members.put("last_modified", lastModified);
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temporaryFile, JsonUtil.toJson(members), StandardCharsets.UTF_8);
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.jwt.consumer.ErrorCodeValidator;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtContext;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rejects software statements that are presented more than once while they would still be accepted.
+ *
+ * A token is identified by its issuer and {@code jti}, or by the digest of the whole token if it has no {@code jti},
+ * and stored as a 64-bit fingerprint with the time at which the claim checks would reject it anyway. The store is a
+ * fixed number of slots of 16 bytes each, held in a {@code long[]} or off-heap, so its memory never grows. The slots
+ * are grouped into buckets of 8 and the buckets into stripes with a lock each, so concurrent validations rarely wait
+ * for each other. Expired entries are overwritten in place.
+ *
+ * Each token has two candidate buckets and goes into the one with fewer live entries. With 1.5 slots per token of
+ * capacity, a bucket practically never overflows before the store holds as many live tokens as its capacity. When
+ * both buckets of a token are full all the same, the {@link FullPolicy} decides whether the new token is rejected with
+ * a {@link RejectedExecutionException} or the entry of the two buckets that expires first is evicted. A capacity of 0
+ * disables detection.
+ */
+public class ReplayDetector {
+
+    public enum FullPolicy {
+        REJECT, // fail closed, the token is rejected until an entry expires
+        EVICT   // fail open, the entry that expires first can be replayed from then on
+    }
+
+    private static final int bucketSize = 8;
+    // With two buckets per token, buckets only start to overflow beyond the capacity
+    private static final double slotsPerToken = 1.5;
+    private static final int maxStripes = 64;
+
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    });
+
+    private final FullPolicy fullPolicy;
+    private final Clock clock;
+    private final Slots slots;
+    private final Object[] stripeLocks;
+    private final int buckets;
+    private final LongAdder full = new LongAdder();
+
+    public ReplayDetector(int capacity) {
+        this(capacity, FullPolicy.REJECT, false);
+    }
+
+    public ReplayDetector(int capacity, FullPolicy fullPolicy, boolean offHeap) {
+        this(capacity, fullPolicy, offHeap, Clock.systemUTC());
+    }
+
+    ReplayDetector(int capacity, FullPolicy fullPolicy, boolean offHeap, Clock clock) {
+        this.fullPolicy = fullPolicy;
+        this.clock = clock;
+        this.buckets = capacity > 0 ? (int) ((capacity * slotsPerToken + bucketSize - 1) / bucketSize) : 0;
+        this.stripeLocks = new Object[Math.max(1, Math.min(maxStripes, buckets))];
+        for (int i = 0; i < stripeLocks.length; i++) {
+            stripeLocks[i] = new Object();
+        }
+        int slotCount = buckets * bucketSize;
+        this.slots = offHeap ? new OffHeapSlots(slotCount) : new HeapSlots(slotCount);
+    }
+
+    public boolean isEnabled() {
+        return buckets > 0;
+    }
+
+    /**
+     * Rejects a token that has already been used, without recording it. Cheap enough to run with the claim checks,
+     * so that replayed tokens do not cost a signature verification.
+     */
+    public void checkNotReplayed(JwtContext jwtContext) throws InvalidJwtException {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long fingerprint = fingerprint(jwtContext);
+        int first = firstBucket(fingerprint);
+        int second = secondBucket(fingerprint);
+        long now = clock.millis();
+        synchronized (firstLock(first, second)) {
+            synchronized (secondLock(first, second)) {
+                if (findLive(first, fingerprint, now) || findLive(second, fingerprint, now)) {
+                    throw replayed(jwtContext);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the use of a token whose signature has been verified, or rejects it if it has been used already. Only
+     * verified tokens are recorded, so that forged tokens cannot block the jti of a genuine one.
+     */
+    public void recordUse(JwtContext jwtContext, int maxAgeSeconds) throws InvalidJwtException {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long fingerprint = fingerprint(jwtContext);
+        long expiresAt = getExpiresAt(jwtContext.getJwtClaims(), maxAgeSeconds);
+        int first = firstBucket(fingerprint);
+        int second = secondBucket(fingerprint);
+        long now = clock.millis();
+        synchronized (firstLock(first, second)) {
+            synchronized (secondLock(first, second)) {
+                if (findLive(first, fingerprint, now) || findLive(second, fingerprint, now)) {
+                    throw replayed(jwtContext);
+                }
+
+                // The token goes into the bucket with fewer live entries
+                int free = findFree(first, now);
+                int otherFree = second != first ? findFree(second, now) : -1;
+                if (free < 0 || (otherFree >= 0 && countLive(second, now) < countLive(first, now))) {
+                    free = otherFree;
+                }
+
+                if (free < 0) {
+                    full.increment();
+                    if (fullPolicy == FullPolicy.REJECT) {
+                        throw new RejectedExecutionException("The replay detection store is full");
+                    }
+                    int earliest = findEarliest(first);
+                    int otherEarliest = findEarliest(second);
+                    free = slots.expiresAt(otherEarliest) < slots.expiresAt(earliest) ? otherEarliest : earliest;
+                }
+                slots.set(free, fingerprint, expiresAt);
+            }
+        }
+    }
+
+    private boolean findLive(int bucket, long fingerprint, long now) {
+        int start = bucket * bucketSize;
+        for (int slot = start; slot < start + bucketSize; slot++) {
+            if (slots.fingerprint(slot) == fingerprint && slots.expiresAt(slot) > now) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the first empty or expired slot of the bucket, or -1 if all of them hold live entries
+    private int findFree(int bucket, long now) {
+        int start = bucket * bucketSize;
+        for (int slot = start; slot < start + bucketSize; slot++) {
+            if (slots.fingerprint(slot) == 0 || slots.expiresAt(slot) <= now) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int countLive(int bucket, long now) {
+        int start = bucket * bucketSize;
+        int live = 0;
+        for (int slot = start; slot < start + bucketSize; slot++) {
+            if (slots.fingerprint(slot) != 0 && slots.expiresAt(slot) > now) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    private int findEarliest(int bucket) {
+        int start = bucket * bucketSize;
+        int earliest = start;
+        for (int slot = start + 1; slot < start + bucketSize; slot++) {
+            if (slots.expiresAt(slot) < slots.expiresAt(earliest)) {
+                earliest = slot;
+            }
+        }
+        return earliest;
+    }
+
+    // The locks of the stripes of both buckets are always taken in the same order
+    private Object firstLock(int first, int second) {
+        return stripeLocks[Math.min(first % stripeLocks.length, second % stripeLocks.length)];
+    }
+
+    private Object secondLock(int first, int second) {
+        return stripeLocks[Math.max(first % stripeLocks.length, second % stripeLocks.length)];
+    }
+
+    public FullPolicy getFullPolicy() {
+        return fullPolicy;
+    }
+
+    /**
+     * Returns the number of tokens that found both their buckets full, and were rejected or caused an eviction.
+     */
+    public long getStoreFullCount() {
+        return full.sum();
+    }
+
+    // A token is accepted until iat + max age + clock skew, unless it expires earlier
+    private long getExpiresAt(JwtClaims claims, int maxAgeSeconds) {
+        long window = (maxAgeSeconds + SsaValidator.ALLOWED_CLOCK_SKEW_SECONDS) * 1000L;
+        try {
+            NumericDate issuedAt = claims.getIssuedAt();
+            long expiresAt = issuedAt != null ? issuedAt.getValueInMillis() + window : clock.millis() + window;
+            NumericDate expirationTime = claims.getExpirationTime();
+            if (expirationTime != null) {
+                expiresAt = Math.min(expiresAt, expirationTime.getValueInMillis()
+                        + SsaValidator.ALLOWED_CLOCK_SKEW_SECONDS * 1000L);
+            }
+            return expiresAt;
+        } catch (MalformedClaimException e) {
+            return clock.millis() + window;
+        }
+    }
+
+    private int firstBucket(long fingerprint) {
+        return (int) Long.remainderUnsigned(fingerprint, buckets);
+    }
+
+    private int secondBucket(long fingerprint) {
+        return (int) Long.remainderUnsigned(Long.rotateLeft(fingerprint, 32), buckets);
+    }
+
+    private static long fingerprint(JwtContext jwtContext) throws InvalidJwtException {
+        MessageDigest digest = sha256.get();
+        String jwtId;
+        try {
+            jwtId = jwtContext.getJwtClaims().getJwtId();
+        } catch (MalformedClaimException e) {
+            jwtId = null;
+        }
+        if (jwtId != null) {
+            digest.update(SsaValidator.getIssuer(jwtContext).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(jwtId.getBytes(StandardCharsets.UTF_8));
+        } else {
+            digest.update(jwtContext.getJwt().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        // 0 marks an empty slot
+        long fingerprint = ByteBuffer.wrap(digest.digest()).getLong();
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private static InvalidJwtException replayed(JwtContext jwtContext) {
+        String message = "The software statement has already been used";
+        return new InvalidJwtException(message,
+                Collections.singletonList(new ErrorCodeValidator.Error(SsaValidator.REPLAYED, message)), jwtContext);
+    }
+
+    // Fingerprint and expiry time of each slot, next to each other
+    private interface Slots {
+        long fingerprint(int slot);
+
+        long expiresAt(int slot);
+
+        void set(int slot, long fingerprint, long expiresAt);
+    }
+
+    private static final class HeapSlots implements Slots {
+        private final long[] values;
+
+        private HeapSlots(int slotCount) {
+            values = new long[slotCount * 2];
+        }
+
+        @Override
+        public long fingerprint(int slot) {
+            return values[slot * 2];
+        }
+
+        @Override
+        public long expiresAt(int slot) {
+            return values[slot * 2 + 1];
+        }
+
+        @Override
+        public void set(int slot, long fingerprint, long expiresAt) {
+            values[slot * 2] = fingerprint;
+            values[slot * 2 + 1] = expiresAt;
+        }
+    }
+
+    private static final class OffHeapSlots implements Slots {
+        private final LongBuffer values;
+
+        private OffHeapSlots(int slotCount) {
+            values = ByteBuffer.allocateDirect(slotCount * 16).asLongBuffer();
+        }
+
+        @Override
+        public long fingerprint(int slot) {
+            return values.get(slot * 2);
+        }
+
+        @Override
+        public long expiresAt(int slot) {
+            return values.get(slot * 2 + 1);
+        }
+
+        @Override
+        public void set(int slot, long fingerprint, long expiresAt) {
+            values.put(slot * 2, fingerprint);
+            values.put(slot * 2 + 1, expiresAt);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtContext;
+import org.jose4j.lang.JoseException;
+
+import java.security.PublicKey;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Validates software statements of the issuers in an {@link IssuerRegistry}, for use in the same JVM without going
+ * through HTTP. The checks are the same as those of the service:
+ * <ol>
+ *     <li>tokens that are in the {@link VerifiedSsaCache} are accepted right away, unless replay detection is enabled</li>
+ *     <li>the token is parsed, routed to its issuer by the iss claim and all checks that do not need a key are run, on
+ *     the calling thread</li>
+ *     <li>the keys of the issuer are taken from its {@link JwksCache}, which only waits for the network if it has no keys
+ *     yet or does not know the kid</li>
+ *     <li>the signature is verified on the verification executor, and the token is recorded by the
+ *     {@link ReplayDetector} and the {@link VerifiedSsaCache}</li>
+ *     <li>once the result has been handed on, the {@code software_jwks_uri} of a valid token is prefetched by the
+ *     {@link ClientJwksCache}, if there is one</li>
+ * </ol>
+ *
+ * The asynchronous API completes exceptionally with an {@link InvalidJwtException} if the token is invalid, a
+ * {@link JoseException} if the keys could not be loaded and a {@link RejectedExecutionException} if the executor does
+ * not accept the verification. Instances may be shared between threads.
+ */
+public class SsaValidationPipeline {
+
+    @FunctionalInterface
+    private interface Verification<T> {
+        T run() throws InvalidJwtException;
+    }
+
+    private final IssuerRegistry issuerRegistry;
+    private final VerifiedSsaCache verifiedSsaCache;
+    private final ReplayDetector replayDetector;
+    private final Executor verificationExecutor;
+    private final ValidationListener listener;
+    private final ClientJwksCache clientJwksCache;
+
+    /**
+     * Creates a pipeline without verified-token cache and replay detection, which verifies signatures on the common
+     * fork-join pool.
+     */
+    public SsaValidationPipeline(IssuerRegistry issuerRegistry) {
+        this(issuerRegistry, new VerifiedSsaCache(0), new ReplayDetector(0), ForkJoinPool.commonPool(),
+                ValidationListener.NONE);
+    }
+
+    public SsaValidationPipeline(IssuerRegistry issuerRegistry, VerifiedSsaCache verifiedSsaCache,
+                                 ReplayDetector replayDetector, Executor verificationExecutor,
+                                 ValidationListener listener) {
+        this(issuerRegistry, verifiedSsaCache, replayDetector, verificationExecutor, listener, null);
+    }
+
+    /**
+     * @param clientJwksCache prefetches the {@code software_jwks_uri} of every token that is found valid, or null
+     */
+    public SsaValidationPipeline(IssuerRegistry issuerRegistry, VerifiedSsaCache verifiedSsaCache,
+                                 ReplayDetector replayDetector, Executor verificationExecutor,
+                                 ValidationListener listener, ClientJwksCache clientJwksCache) {
+        this.issuerRegistry = issuerRegistry;
+        this.verifiedSsaCache = verifiedSsaCache;
+        this.replayDetector = replayDetector;
+        this.verificationExecutor = verificationExecutor;
+        this.listener = listener;
+        this.clientJwksCache = clientJwksCache;
+
+        // Tokens verified with keys that are no longer published must be verified again
+        for (TrustedIssuer issuer : issuerRegistry.getIssuers()) {
+            issuer.getJwksCache().addKeySetChangeListener(verifiedSsaCache::clear);
+        }
+    }
+
+    /**
+     * Validates a token on the calling thread, waiting for the keys of the issuer if they have to be fetched.
+     */
+    public void validate(String ssaStr) throws InvalidJwtException, JoseException {
+        try {
+            validateAsync(ssaStr, Runnable::run).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InvalidJwtException) {
+                throw (InvalidJwtException) cause;
+            }
+            if (cause instanceof JoseException) {
+                throw (JoseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Validates a token, verifying its signature on the verification executor.
+     */
+    public CompletableFuture<Void> validateAsync(String ssaStr) {
+        return validateAsync(ssaStr, verificationExecutor);
+    }
+
+    /**
+     * Validates a token, verifying its signature on the given executor.
+     */
+    public CompletableFuture<Void> validateAsync(String ssaStr, Executor executor) {
+        // The same token was already validated and is still within its lifetime. A token that is presented again
+        // is a replay when replay detection is enabled, so the shortcut is only taken without it.
+        if (!replayDetector.isEnabled() && verifiedSsaCache.isVerified(ssaStr)) {
+            listener.recordValid(true);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        verify(ssaStr, executor).whenComplete((jwtContext, error) -> {
+            if (error == null) {
+                listener.recordValid(false);
+                result.complete(null);
+
+                // Only queued once the result has been handed on, so that the prefetch never delays it
+                if (clientJwksCache != null) {
+                    clientJwksCache.prefetch(jwtContext.getJwtClaims());
+                }
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                listener.recordFailure(cause);
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    // The cheap checks run on the calling thread, the signature is verified on the given executor
+    private CompletableFuture<JwtContext> verify(String ssaStr, Executor executor) {
+        // Reject malformed, expired and unknown-issuer or wrong-algorithm tokens before looking up keys
+        JwtContext jwtContext;
+        TrustedIssuer issuer;
+        long claimsStart = System.nanoTime();
+        try {
+            jwtContext = SsaValidator.parse(ssaStr);
+            issuer = issuerRegistry.getIssuer(jwtContext);
+            issuer.getValidator().checkClaims(jwtContext);
+            replayDetector.checkNotReplayed(jwtContext);
+        } catch (InvalidJwtException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            listener.recordStage(ValidationListener.Stage.CLAIMS, System.nanoTime() - claimsStart);
+        }
+
+        // The cache is only refreshed if it has expired or if the kid in the header of the JWS/JWT is unknown
+        long keyLookupStart = System.nanoTime();
+        return issuer.getJwksCache().getVerificationKeys(SsaValidator.getKeyId(jwtContext))
+                .thenCompose(keys -> {
+                    listener.recordStage(ValidationListener.Stage.KEY_LOOKUP, System.nanoTime() - keyLookupStart);
+                    return runOn(executor, () -> verifySignature(issuer.getValidator(), jwtContext, keys));
+                });
+    }
+
+    private JwtContext verifySignature(SsaValidator ssaValidator, JwtContext jwtContext, VerificationKeys keys)
+            throws InvalidJwtException {
+        long keySelectionStart = System.nanoTime();
+        PublicKey key;
+        try {
+            key = ssaValidator.selectKey(jwtContext, keys);
+        } finally {
+            listener.recordStage(ValidationListener.Stage.KEY_SELECTION, System.nanoTime() - keySelectionStart);
+        }
+
+        long signatureStart = System.nanoTime();
+        try {
+            ssaValidator.verifySignature(jwtContext, key);
+        } finally {
+            listener.recordStage(ValidationListener.Stage.SIGNATURE, System.nanoTime() - signatureStart);
+        }
+
+        // Only tokens with a valid signature are recorded, and the check is repeated in case the same token has
+        // been verified concurrently
+        replayDetector.recordUse(jwtContext, ssaValidator.getMaxAgeSeconds());
+        verifiedSsaCache.addVerified(jwtContext.getJwt(), jwtContext.getJwtClaims(), ssaValidator.getMaxAgeSeconds());
+        return jwtContext;
+    }
+
+    // A full executor fails the validation instead of throwing on the thread that completed the key lookup
+    private static <T> CompletableFuture<T> runOn(Executor executor, Verification<T> verification) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(verification.run());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,276 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.VerificationJwkSelector;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.jwt.consumer.ErrorCodeValidator;
+import org.jose4j.jwt.consumer.ErrorCodes;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.InvalidJwtSignatureException;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.jwt.consumer.JwtContext;
+import org.jose4j.jwx.HeaderParameterNames;
+import org.jose4j.jwx.JsonWebStructure;
+import org.jose4j.lang.InvalidAlgorithmException;
+import org.jose4j.lang.JoseException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates the software statements of one issuer in stages, so that malformed, expired, wrong-issuer and
+ * wrong-algorithm tokens are rejected before any key lookup or signature verification takes place:
+ * <ol>
+ *     <li>structural parse of the compact serialization and the claims</li>
+ *     <li>header checks of the algorithm</li>
+ *     <li>claim checks of the issuer and the issued at time</li>
+ *     <li>signature verification with a key from the JWKS</li>
+ * </ol>
+ * Instances are immutable and may be shared between threads.
+ *
+ * RSA signatures are verified with {@link Signature} instances that are created once per thread and algorithm, with
+ * the PSS parameters already set, instead of being looked up from the providers for every token.
+ */
+public final class SsaValidator {
+
+    // Error codes in addition to the ones in org.jose4j.jwt.consumer.ErrorCodes
+    public static final int MALFORMED = 1001;
+    public static final int ALGORITHM_NOT_PERMITTED = 1002;
+    public static final int KEY_NOT_FOUND = 1003;
+    public static final int REPLAYED = 1004;
+
+    // Leeway in validating time based claims to account for clock skew
+    public static final int ALLOWED_CLOCK_SKEW_SECONDS = 30;
+
+    private static final ThreadLocal<Map<String, Signature>> rsaSignatures = ThreadLocal.withInitial(HashMap::new);
+
+    private final int maxAgeSeconds;
+    private final AlgorithmConstraints algorithmConstraints;
+    private final JwtConsumer claimsConsumer;
+    private final VerificationJwkSelector keySelector = new VerificationJwkSelector();
+
+    public SsaValidator(String issuerName, int maxAgeSeconds, String... allowedAlgorithms) {
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.algorithmConstraints = new AlgorithmConstraints(AlgorithmConstraints.ConstraintType.PERMIT, allowedAlgorithms);
+
+        // The signature is verified separately, after the claims have been checked
+        this.claimsConsumer = new JwtConsumerBuilder()
+                .setAllowedClockSkewInSeconds(ALLOWED_CLOCK_SKEW_SECONDS)
+                .setIssuedAtRestrictions(0, maxAgeSeconds) // JWT must not be older than maxAgeSeconds
+                .setExpectedIssuer(issuerName) // name/uri of the authority that issued the token
+                .setSkipSignatureVerification()
+                .build();
+    }
+
+    public int getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    /**
+     * Parses the compact serialization and the claims of a token without validating anything, so that the issuer can
+     * be read before it is known which validator to use.
+     */
+    public static JwtContext parse(String ssaStr) throws InvalidJwtException {
+        JsonWebSignature jws = new JsonWebSignature();
+        try {
+            jws.setCompactSerialization(ssaStr);
+        } catch (JoseException e) {
+            throw new InvalidJwtException("Invalid JWS compact serialization: " + e.getMessage(),
+                    new ErrorCodeValidator.Error(MALFORMED, e.getMessage()), e, null);
+        }
+
+        JwtClaims claims = JwtClaims.parse(jws.getUnverifiedPayload());
+        return new JwtContext(ssaStr, claims, Collections.<JsonWebStructure>singletonList(jws));
+    }
+
+    /**
+     * Runs all checks that do not need the verification key.
+     *
+     * @return the parsed token to pass to {@link #verifySignature(JwtContext, List)}
+     */
+    public JwtContext checkClaims(String ssaStr) throws InvalidJwtException {
+        JwtContext jwtContext = parse(ssaStr);
+        checkClaims(jwtContext);
+        return jwtContext;
+    }
+
+    /**
+     * Runs all checks that do not need the verification key on a token returned by {@link #parse(String)}.
+     */
+    public void checkClaims(JwtContext jwtContext) throws InvalidJwtException {
+        try {
+            algorithmConstraints.checkConstraint(getJsonWebSignature(jwtContext).getAlgorithmHeaderValue());
+        } catch (InvalidAlgorithmException e) {
+            throw new InvalidJwtException(e.getMessage(),
+                    new ErrorCodeValidator.Error(ALGORITHM_NOT_PERMITTED, e.getMessage()), e, jwtContext);
+        }
+
+        claimsConsumer.processContext(jwtContext);
+    }
+
+    /**
+     * Verifies the signature of a token that passed {@link #checkClaims(String)}.
+     */
+    public void verifySignature(JwtContext jwtContext, List<JsonWebKey> keys) throws InvalidJwtException {
+        verifySignature(jwtContext, selectKey(jwtContext, new VerificationKeys(keys)));
+    }
+
+    /**
+     * Selects the key from the JWKS to verify the signature of a token that passed {@link #checkClaims(String)}. Tokens
+     * with a kid take the key from the index, the others are matched against all keys of the JWKS.
+     */
+    public PublicKey selectKey(JwtContext jwtContext, VerificationKeys keys) throws InvalidJwtException {
+        JsonWebSignature jws = getJsonWebSignature(jwtContext);
+        String kid = jws.getKeyIdHeaderValue();
+        Key key;
+        if (kid != null) {
+            key = keys.getKey(kid, jws.getAlgorithmHeaderValue());
+        } else {
+            JsonWebKey jsonWebKey = selectKey(jwtContext, keys.getJsonWebKeys());
+            key = VerificationKeys.canVerify(jsonWebKey) ? jsonWebKey.getKey() : null;
+        }
+        if (!(key instanceof PublicKey)) {
+            String message = "No key found in the JWKS for kid " + kid + " and alg " + jws.getAlgorithmHeaderValue();
+            throw new InvalidJwtException(message,
+                    Collections.singletonList(new ErrorCodeValidator.Error(KEY_NOT_FOUND, message)), jwtContext);
+        }
+        return (PublicKey) key;
+    }
+
+    private JsonWebKey selectKey(JwtContext jwtContext, List<JsonWebKey> keys) throws InvalidJwtException {
+        JsonWebSignature jws = getJsonWebSignature(jwtContext);
+
+        // The VerificationJwkSelector will select the most appropriate key to use for verification
+        // based on the kid and other factors provided in the header of the JWS/JWT.
+        JsonWebKey key;
+        try {
+            key = keySelector.select(jws, keys);
+        } catch (JoseException e) {
+            throw new InvalidJwtException("Unable to select a verification key: " + e.getMessage(),
+                    new ErrorCodeValidator.Error(KEY_NOT_FOUND, e.getMessage()), e, jwtContext);
+        }
+        if (key == null) {
+            String message = "No key found in the JWKS for kid " + jws.getKeyIdHeaderValue();
+            throw new InvalidJwtException(message,
+                    Collections.singletonList(new ErrorCodeValidator.Error(KEY_NOT_FOUND, message)), jwtContext);
+        }
+        return key;
+    }
+
+    /**
+     * Verifies the signature of a token that passed {@link #checkClaims(String)} with the given key.
+     */
+    public void verifySignature(JwtContext jwtContext, PublicKey key) throws InvalidJwtException {
+        JsonWebSignature jws = getJsonWebSignature(jwtContext);
+        try {
+            checkNoCriticalHeaders(jws);
+            Signature signature = getRsaSignature(jws.getAlgorithmHeaderValue());
+            boolean valid = signature != null
+                    ? verifyRsaSignature(signature, jwtContext.getJwt(), key)
+                    : verifyWithJose4j(jws, key);
+            if (!valid) {
+                throw new InvalidJwtSignatureException(jws, jwtContext);
+            }
+        } catch (JoseException | GeneralSecurityException | IllegalArgumentException e) {
+            throw new InvalidJwtException("Unable to verify the signature: " + e.getMessage(),
+                    new ErrorCodeValidator.Error(ErrorCodes.SIGNATURE_INVALID, e.getMessage()), e, jwtContext);
+        }
+    }
+
+    // None of the header parameters that may be marked as critical are understood here, so a token with a crit
+    // header must be rejected (RFC 7515, section 4.1.11). jose4j checks this in verifySignature, which the reused
+    // Signature instances bypass.
+    private static void checkNoCriticalHeaders(JsonWebSignature jws) throws JoseException {
+        Object critical = jws.getHeaders().getObjectHeaderValue(HeaderParameterNames.CRITICAL);
+        if (critical != null) {
+            throw new JoseException("Unrecognized header parameters marked as critical " + critical);
+        }
+    }
+
+    // The algorithm has passed the constraints in checkClaims, so the signing input and signature can be taken
+    // directly from the compact serialization
+    private static boolean verifyRsaSignature(Signature signature, String ssaStr, PublicKey key)
+            throws GeneralSecurityException {
+        int signatureStart = ssaStr.lastIndexOf('.');
+        signature.initVerify(key);
+        signature.update(ssaStr.substring(0, signatureStart).getBytes(StandardCharsets.US_ASCII));
+        return signature.verify(Base64.getUrlDecoder().decode(ssaStr.substring(signatureStart + 1)));
+    }
+
+    private boolean verifyWithJose4j(JsonWebSignature jws, PublicKey key) throws JoseException {
+        jws.setAlgorithmConstraints(algorithmConstraints);
+        jws.setKey(key);
+        return jws.verifySignature();
+    }
+
+    // Returns the Signature of this thread for an RSA algorithm, or null for other algorithms
+    private static Signature getRsaSignature(String algorithm) throws GeneralSecurityException {
+        Map<String, Signature> signatures = rsaSignatures.get();
+        Signature signature = signatures.get(algorithm);
+        if (signature == null) {
+            signature = createRsaSignature(algorithm);
+            if (signature != null) {
+                signatures.put(algorithm, signature);
+            }
+        }
+        return signature;
+    }
+
+    private static Signature createRsaSignature(String algorithm) throws GeneralSecurityException {
+        switch (algorithm) {
+            case AlgorithmIdentifiers.RSA_USING_SHA256:
+                return Signature.getInstance("SHA256withRSA");
+            case AlgorithmIdentifiers.RSA_USING_SHA384:
+                return Signature.getInstance("SHA384withRSA");
+            case AlgorithmIdentifiers.RSA_USING_SHA512:
+                return Signature.getInstance("SHA512withRSA");
+            case AlgorithmIdentifiers.RSA_PSS_USING_SHA256:
+                return createRsaPssSignature("SHA-256", MGF1ParameterSpec.SHA256, 32);
+            case AlgorithmIdentifiers.RSA_PSS_USING_SHA384:
+                return createRsaPssSignature("SHA-384", MGF1ParameterSpec.SHA384, 48);
+            case AlgorithmIdentifiers.RSA_PSS_USING_SHA512:
+                return createRsaPssSignature("SHA-512", MGF1ParameterSpec.SHA512, 64);
+            default:
+                return null;
+        }
+    }
+
+    private static Signature createRsaPssSignature(String digest, MGF1ParameterSpec mgfSpec, int saltLength)
+            throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("RSASSA-PSS");
+        signature.setParameter(new PSSParameterSpec(digest, "MGF1", mgfSpec, saltLength, 1));
+        return signature;
+    }
+
+    public static String getIssuer(JwtContext jwtContext) throws InvalidJwtException {
+        try {
+            return jwtContext.getJwtClaims().getIssuer();
+        } catch (MalformedClaimException e) {
+            throw new InvalidJwtException(e.getMessage(),
+                    new ErrorCodeValidator.Error(ErrorCodes.MALFORMED_CLAIM, e.getMessage()), e, jwtContext);
+        }
+    }
+
+    public static String getKeyId(JwtContext jwtContext) {
+        return getJsonWebSignature(jwtContext).getKeyIdHeaderValue();
+    }
+
+    private static JsonWebSignature getJsonWebSignature(JwtContext jwtContext) {
+        return (JsonWebSignature) jwtContext.getJoseObjects().get(0);
+    }
+}
@@ -0,0 +1,44 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * An issuer of software statements, with its own validation rules and key cache.
+ */
+public class TrustedIssuer {
+
+    private final String name;
+    private final SsaValidator validator;
+    private final JwksCache jwksCache;
+
+    public TrustedIssuer(String name, SsaValidator validator, JwksCache jwksCache) {
+        this.name = name;
+        this.validator = validator;
+        this.jwksCache = jwksCache;
+    }
+
+    /**
+     * Creates the validator and the key cache of a configured issuer, fetching its keys with the given client.
+     */
+    public TrustedIssuer(IssuerConfiguration configuration, HttpClient httpClient) {
+        this(configuration.getName(),
+                new SsaValidator(configuration.getName(), configuration.getMaxAgeSeconds(),
+                        configuration.getAllowedAlgorithms().toArray(new String[0])),
+                new JwksCache(httpClient, configuration.getJwksUri(),
+                        Duration.ofSeconds(configuration.getJwksCacheSeconds()),
+                        Duration.ofSeconds(configuration.getJwksMinRefreshSeconds())));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SsaValidator getValidator() {
+        return validator;
+    }
+
+    public JwksCache getJwksCache() {
+        return jwksCache;
+    }
+}
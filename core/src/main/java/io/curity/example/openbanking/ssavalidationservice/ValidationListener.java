@@ -0,0 +1,39 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+/**
+ * Receives the outcome and the stage latencies of every validation of a {@link SsaValidationPipeline}, for example to
+ * publish them as metrics. Methods are called on the validating threads and must not block.
+ */
+public interface ValidationListener {
+
+    ValidationListener NONE = new ValidationListener() { };
+
+    enum Stage {
+        CLAIMS("claims"),
+        KEY_LOOKUP("key_lookup"),
+        KEY_SELECTION("key_selection"),
+        SIGNATURE("signature");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    default void recordStage(Stage stage, long durationNanos) {
+    }
+
+    /**
+     * @param cached true if the token was accepted by the {@link VerifiedSsaCache}
+     */
+    default void recordValid(boolean cached) {
+    }
+
+    default void recordFailure(Throwable error) {
+    }
+}
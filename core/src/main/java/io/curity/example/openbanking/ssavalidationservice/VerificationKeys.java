@@ -0,0 +1,121 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.EllipticCurveJsonWebKey;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.KeyOperations;
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.jwk.RsaJsonWebKey;
+import org.jose4j.jwk.Use;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.keys.EllipticCurves;
+
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The verification keys of a JWKS, indexed by kid and algorithm when the key set is loaded, so that selecting the key
+ * for a token is a map lookup without any JSON handling.
+ *
+ * Only keys that may verify signatures are indexed: public keys whose {@code use} and {@code key_ops} allow it, for
+ * the algorithm in their {@code alg} if it fits their key type or, without one, for every algorithm of their key
+ * type. RSA keys shorter than 2048 bits are left out, as jose4j would reject them. A kid without any such key is
+ * unknown. Instances are immutable and may be shared between threads.
+ */
+public final class VerificationKeys {
+
+    private static final List<String> rsaAlgorithms = List.of(
+            AlgorithmIdentifiers.RSA_USING_SHA256, AlgorithmIdentifiers.RSA_USING_SHA384, AlgorithmIdentifiers.RSA_USING_SHA512,
+            AlgorithmIdentifiers.RSA_PSS_USING_SHA256, AlgorithmIdentifiers.RSA_PSS_USING_SHA384, AlgorithmIdentifiers.RSA_PSS_USING_SHA512);
+    private static final Map<String, String> ecAlgorithmsByCurve = Map.of(
+            EllipticCurves.P_256, AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256,
+            EllipticCurves.P_384, AlgorithmIdentifiers.ECDSA_USING_P384_CURVE_AND_SHA384,
+            EllipticCurves.P_521, AlgorithmIdentifiers.ECDSA_USING_P521_CURVE_AND_SHA512);
+    private static final int minRsaKeySize = 2048;
+
+    private final List<JsonWebKey> jsonWebKeys;
+    private final Map<String, Map<String, PublicKey>> keysByKeyId;
+
+    public VerificationKeys(List<JsonWebKey> jsonWebKeys) {
+        this.jsonWebKeys = Collections.unmodifiableList(jsonWebKeys);
+
+        Map<String, Map<String, PublicKey>> keysByKeyId = new HashMap<>();
+        for (JsonWebKey jsonWebKey : jsonWebKeys) {
+            if (jsonWebKey.getKeyId() == null || !canVerify(jsonWebKey)) {
+                continue;
+            }
+            // A kid is only known if one of its keys can verify some algorithm, so that a token with that kid and no
+            // usable key still triggers a refresh
+            List<String> algorithms = getAlgorithms(jsonWebKey);
+            if (algorithms.isEmpty()) {
+                continue;
+            }
+            PublicKey key = ((PublicJsonWebKey) jsonWebKey).getPublicKey();
+            Map<String, PublicKey> keysByAlgorithm = keysByKeyId.computeIfAbsent(jsonWebKey.getKeyId(), kid -> new HashMap<>());
+            for (String algorithm : algorithms) {
+                // The first key wins if the JWKS contains the same kid twice
+                keysByAlgorithm.putIfAbsent(algorithm, key);
+            }
+        }
+        this.keysByKeyId = keysByKeyId;
+    }
+
+    /**
+     * Returns all keys of the JWKS, including the ones that are not indexed.
+     */
+    public List<JsonWebKey> getJsonWebKeys() {
+        return jsonWebKeys;
+    }
+
+    public boolean containsKeyId(String kid) {
+        return keysByKeyId.containsKey(kid);
+    }
+
+    /**
+     * Returns the key with the given kid that may verify signatures of the given algorithm, or null if there is none.
+     */
+    public PublicKey getKey(String kid, String algorithm) {
+        Map<String, PublicKey> keysByAlgorithm = keysByKeyId.get(kid);
+        return keysByAlgorithm != null ? keysByAlgorithm.get(algorithm) : null;
+    }
+
+    static boolean canVerify(JsonWebKey jsonWebKey) {
+        if (!(jsonWebKey instanceof PublicJsonWebKey) || ((PublicJsonWebKey) jsonWebKey).getPublicKey() == null) {
+            return false;
+        }
+        if (jsonWebKey.getUse() != null && !Use.SIGNATURE.equals(jsonWebKey.getUse())) {
+            return false;
+        }
+        if (jsonWebKey.getKeyOps() != null && !jsonWebKey.getKeyOps().contains(KeyOperations.VERIFY)) {
+            return false;
+        }
+        if (jsonWebKey instanceof RsaJsonWebKey) {
+            return ((RSAPublicKey) ((RsaJsonWebKey) jsonWebKey).getPublicKey()).getModulus().bitLength() >= minRsaKeySize;
+        }
+        return true;
+    }
+
+    // The algorithms of the key type, narrowed down to the alg of the key if it has one
+    private static List<String> getAlgorithms(JsonWebKey jsonWebKey) {
+        List<String> algorithms = getKeyTypeAlgorithms(jsonWebKey);
+        String algorithm = jsonWebKey.getAlgorithm();
+        if (algorithm == null) {
+            return algorithms;
+        }
+        return algorithms.contains(algorithm) ? List.of(algorithm) : List.of();
+    }
+
+    private static List<String> getKeyTypeAlgorithms(JsonWebKey jsonWebKey) {
+        if (jsonWebKey instanceof RsaJsonWebKey) {
+            return rsaAlgorithms;
+        }
+        if (jsonWebKey instanceof EllipticCurveJsonWebKey) {
+            String algorithm = ecAlgorithmsByCurve.get(((EllipticCurveJsonWebKey) jsonWebKey).getCurveName());
+            return algorithm != null ? List.of(algorithm) : List.of();
+        }
+        return List.of();
+    }
+}
@@ -0,0 +1,124 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.jwt.NumericDate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers software statements that passed validation, so that a token presented again within its lifetime can be
+ * accepted without verifying its signature again.
+ *
+ * Entries are keyed by the SHA-256 digest of the token and expire when the token becomes too old (or expires,
+ * whichever comes first). When the cache is full, the least recently used entry is evicted. A cache with a maximum
+ * size of 0 is disabled.
+ */
+public class VerifiedSsaCache {
+
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    });
+
+    private final int maxEntries;
+    private final Clock clock;
+    private final Map<ByteBuffer, Long> expiryByDigest;
+
+    public VerifiedSsaCache(int maxEntries) {
+        this(maxEntries, Clock.systemUTC());
+    }
+
+    VerifiedSsaCache(int maxEntries, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.expiryByDigest = new LinkedHashMap<ByteBuffer, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+                return size() > VerifiedSsaCache.this.maxEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    public boolean isVerified(String ssaStr) {
+        if (!isEnabled()) {
+            return false;
+        }
+
+        ByteBuffer digest = digest(ssaStr);
+        synchronized (expiryByDigest) {
+            Long expiresAt = expiryByDigest.get(digest);
+            if (expiresAt == null) {
+                return false;
+            }
+            if (expiresAt <= clock.millis()) {
+                expiryByDigest.remove(digest);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    public void addVerified(String ssaStr, JwtClaims claims, long maxAgeSeconds) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        // The token must not be accepted from the cache once it would be rejected by the claim checks
+        NumericDate expiresAt;
+        NumericDate expirationTime;
+        try {
+            expiresAt = claims.getIssuedAt();
+            expirationTime = claims.getExpirationTime();
+        } catch (MalformedClaimException e) {
+            return;
+        }
+        if (expiresAt == null) {
+            return;
+        }
+        expiresAt.addSeconds(maxAgeSeconds);
+        if (expirationTime != null && expirationTime.isBefore(expiresAt)) {
+            expiresAt = expirationTime;
+        }
+        if (expiresAt.getValueInMillis() <= clock.millis()) {
+            return;
+        }
+
+        ByteBuffer digest = digest(ssaStr);
+        synchronized (expiryByDigest) {
+            expiryByDigest.put(digest, expiresAt.getValueInMillis());
+        }
+    }
+
+    /**
+     * Removes all entries, for example because the keys of the issuer have changed.
+     */
+    public void clear() {
+        synchronized (expiryByDigest) {
+            expiryByDigest.clear();
+        }
+    }
+
+    int size() {
+        synchronized (expiryByDigest) {
+            return expiryByDigest.size();
+        }
+    }
+
+    private static ByteBuffer digest(String ssaStr) {
+        return ByteBuffer.wrap(sha256.get().digest(ssaStr.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
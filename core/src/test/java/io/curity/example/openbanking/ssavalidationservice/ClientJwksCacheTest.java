@@ -0,0 +1,165 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwt.JwtClaims;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ClientJwksCacheTest {
+
+    private static final String jwks = "{\"keys\": []}";
+
+    private final MutableClock clock = new MutableClock();
+    private final Map<String, List<CompletableFuture<JwksFetcher.Response>>> responses = new ConcurrentHashMap<>();
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    @Test
+    public void deduplicateInFlightFetches() {
+        ClientJwksCache cache = cache(10, 2);
+
+        Assertions.assertTrue(cache.prefetch(claims("https://client.example/a.jwks")));
+        Assertions.assertFalse(cache.prefetch(claims("https://client.example/a.jwks")));
+        Assertions.assertNull(cache.get("https://client.example/a.jwks"));
+
+        respond("https://client.example/a.jwks", JwksFetcher.Response.ok(jwks, "\"v1\"", null));
+        Assertions.assertEquals(jwks, cache.get("https://client.example/a.jwks").getJwks());
+        Assertions.assertFalse(cache.prefetch(claims("https://client.example/a.jwks")));
+        Assertions.assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void limitConcurrentFetches() {
+        ClientJwksCache cache = cache(2, 1);
+
+        Assertions.assertTrue(cache.prefetch("https://client.example/a.jwks"));
+        Assertions.assertTrue(cache.prefetch("https://client.example/b.jwks"));
+        Assertions.assertTrue(cache.prefetch("https://client.example/c.jwks"));
+        Assertions.assertFalse(cache.prefetch("https://client.example/d.jwks"));
+        Assertions.assertEquals(1, fetches.get());
+        Assertions.assertEquals(1, cache.getDroppedCount());
+
+        // The queued fetches start one after the other
+        respond("https://client.example/a.jwks", JwksFetcher.Response.ok(jwks, null, null));
+        Assertions.assertEquals(2, fetches.get());
+        respond("https://client.example/b.jwks", JwksFetcher.Response.ok(jwks, null, null));
+        Assertions.assertEquals(3, fetches.get());
+    }
+
+    @Test
+    public void expireAndRevalidatePerClient() {
+        ClientJwksCache cache = cache(10, 2);
+        cache.prefetch("https://client.example/a.jwks");
+        respond("https://client.example/a.jwks", JwksFetcher.Response.ok(jwks, "\"v1\"", null));
+        cache.prefetch("https://client.example/b.jwks");
+        respond("https://client.example/b.jwks", JwksFetcher.Response.ok(jwks, null, null, Duration.ofMinutes(1)));
+
+        // The second client asked for a shorter time to live
+        clock.advance(Duration.ofMinutes(2));
+        Assertions.assertNotNull(cache.get("https://client.example/a.jwks"));
+        Assertions.assertNull(cache.get("https://client.example/b.jwks"));
+
+        clock.advance(Duration.ofMinutes(5));
+        Assertions.assertNull(cache.get("https://client.example/a.jwks"));
+        Assertions.assertTrue(cache.prefetch("https://client.example/a.jwks"));
+        respond("https://client.example/a.jwks", JwksFetcher.Response.notModified());
+        Assertions.assertEquals(jwks, cache.get("https://client.example/a.jwks").getJwks());
+    }
+
+    @Test
+    public void retryFailedFetchesLater() {
+        ClientJwksCache cache = cache(10, 2);
+
+        cache.prefetch("https://client.example/a.jwks");
+        respond("https://client.example/a.jwks", JwksFetcher.Response.ok("not a jwks", null, null));
+        Assertions.assertNull(cache.get("https://client.example/a.jwks"));
+        Assertions.assertEquals(1, cache.getFailedCount());
+        Assertions.assertFalse(cache.prefetch("https://client.example/a.jwks"));
+
+        clock.advance(ClientJwksCache.RETRY_AFTER_FAILURE.plusSeconds(1));
+        Assertions.assertTrue(cache.prefetch("https://client.example/a.jwks"));
+    }
+
+    @Test
+    public void keepKeySetsWhenFetchesFail() {
+        ClientJwksCache cache = cache(10, 2);
+        cache.prefetch("https://client.example/a.jwks");
+        respond("https://client.example/a.jwks", JwksFetcher.Response.ok(jwks, null, null));
+
+        // Many more bad URIs than the cache can hold
+        for (int i = 0; i < 50; i++) {
+            String jwksUri = "https://client.example/bad-" + i + ".jwks";
+            cache.prefetch(jwksUri);
+            respond(jwksUri, JwksFetcher.Response.ok("not a jwks", null, null));
+        }
+
+        Assertions.assertEquals(50, cache.getFailedCount());
+        Assertions.assertEquals(jwks, cache.get("https://client.example/a.jwks").getJwks());
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(1, cache.getFailedUriCount());
+    }
+
+    @Test
+    public void ignoreMissingAndInsecureUris() {
+        ClientJwksCache cache = cache(10, 2);
+
+        Assertions.assertFalse(cache.prefetch(new JwtClaims()));
+        Assertions.assertFalse(cache.prefetch("http://client.example/a.jwks"));
+        Assertions.assertFalse(cache.prefetch("not a uri"));
+        Assertions.assertFalse(cache(0, 2).prefetch("https://client.example/a.jwks"));
+        Assertions.assertEquals(0, fetches.get());
+    }
+
+    // Fetches complete when the test responds, and start on the calling thread
+    private ClientJwksCache cache(int maxEntries, int maxConcurrentFetches) {
+        return new ClientJwksCache(jwksUri -> (etag, lastModified) -> {
+            fetches.incrementAndGet();
+            CompletableFuture<JwksFetcher.Response> response = new CompletableFuture<>();
+            responses.computeIfAbsent(jwksUri.toString(), uri -> new ArrayList<>()).add(response);
+            return response;
+        }, Runnable::run, maxEntries, Duration.ofMinutes(5), maxConcurrentFetches, clock);
+    }
+
+    private void respond(String jwksUri, JwksFetcher.Response response) {
+        List<CompletableFuture<JwksFetcher.Response>> pending = responses.get(jwksUri);
+        pending.get(pending.size() - 1).complete(response);
+    }
+
+    private static JwtClaims claims(String jwksUri) {
+        JwtClaims claims = new JwtClaims();
+        claims.setStringClaim(ClientJwksCache.SOFTWARE_JWKS_URI, jwksUri);
+        return claims;
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2021-06-01T12:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jose4j.lang.JoseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+
+class HttpJwksFetcherTest {
+
+    private static final String jwks = "{\"keys\": []}";
+
+    private HttpServer server;
+    private URI baseUri;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/jwks", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = jwks.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.createContext("/large", exchange -> {
+            // Streamed without a Content-Length, the fetcher has to count the bytes itself
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                byte[] chunk = new byte[8192];
+                for (int i = 0; i < 1024; i++) {
+                    out.write(chunk);
+                }
+            } catch (IOException e) {
+                // The client stopped reading
+            }
+            exchange.close();
+        });
+        server.createContext("/broken", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUri = URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void fetchAndRevalidate() {
+        HttpJwksFetcher fetcher = new HttpJwksFetcher(HttpClient.newHttpClient(), baseUri.resolve("/jwks"));
+
+        JwksFetcher.Response response = fetcher.fetch(null, null).join();
+        Assertions.assertFalse(response.isNotModified());
+        Assertions.assertEquals(jwks, response.getJwks());
+        Assertions.assertEquals("\"v1\"", response.getEtag());
+
+        Assertions.assertTrue(fetcher.fetch(response.getEtag(), null).join().isNotModified());
+    }
+
+    @Test
+    public void failOnTooLargeBody() {
+        HttpJwksFetcher fetcher = new HttpJwksFetcher(HttpClient.newHttpClient(), baseUri.resolve("/large"), 64*1024);
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class, () -> fetcher.fetch(null, null).join());
+        Assertions.assertTrue(e.getCause() instanceof JoseException, () -> "Unexpected " + e.getCause());
+        Assertions.assertEquals(jwks, new HttpJwksFetcher(HttpClient.newHttpClient(), baseUri.resolve("/jwks"),
+                jwks.length()).fetch(null, null).join().getJwks());
+    }
+
+    @Test
+    public void failOnErrorStatus() {
+        HttpJwksFetcher fetcher = new HttpJwksFetcher(HttpClient.newHttpClient(), baseUri.resolve("/broken"));
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class, () -> fetcher.fetch(null, null).join());
+        Assertions.assertTrue(e.getCause() instanceof JoseException);
+    }
+}
@@ -0,0 +1,223 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.lang.JoseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+class JwksCacheTest {
+
+    private static final String jwks = "{\"keys\": [" +
+            "{" +
+                "\"kty\": \"RSA\"," +
+                "\"kid\": \"demo-key\"," +
+                "\"n\": \"w5lPpKgSsg_HCHCMvaE_XG_FNEoXx2xA_QaUC038RFmHZgKdPBwBWwIZHJZPF8WvOyTBmyHBPqqPy7SOYDdzcYdcbOdu45dRdVy5vxO3RJhz8Nh1HWTgweTl0vUSh_Jc5sPXVQyzJiQotwcQmxixzfde0WPuknyy_KERTx9p-M2sLIaoifpoySODZPpojA470Qj_v8q-vNa6aIcsuHPEShVwvRviPMrRpVpoUkd3tWS6DmL-ywZvEpKhWXdmBbeNpZpLxHRh_MNrTacLP3YxSi_FqPlDRmQg6zEi8SEqb8Q55cd0qS3IOsV7oDlmxvpdIHTbqudh6VEDR4lDeyMpdn581sWcYo8HM8P_IiWFJGNUVOa0iAJZbMOWbcVzKwZxFww9596qkgT-XFd6uLYMSnLOD7zpr1cwavOizaBGL9OjkVbHUD3PSXolZvjyXJli8v-yp6MhDFUBYi9IlXhrkF1ZyZ5FcMFIBHI4yjsAIWx2420FrKhpPrnjP2317xj6c8qKxoSzZdYxQIeCmQGlQOvHhGDkj5Jxur1q2J0MNS0j0n-GWxWQmizATVBwYju3O7BlT6gJoOg34ZlgYaYDRFkuiE2ctEI2coqCbQ-iiA6KHSRU-8xIZ9mggHHtEkX0TSl6oBSN1AQqGcBariRb8v_Z-gHPbq4sUEUgwS-E7RE\"," +
+                "\"e\": \"AQAB\"" +
+            "}" +
+        "]}";
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    public void concurrentMissesShareOneFetch() {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        JwksCache cache = new JwksCache(fetcher(() -> response), Duration.ofHours(1), Duration.ofSeconds(30), clock);
+
+        CompletableFuture<VerificationKeys> first = cache.getVerificationKeys();
+        CompletableFuture<VerificationKeys> second = cache.getVerificationKeys("demo-key");
+        response.complete(jwks);
+
+        Assertions.assertEquals(1, first.join().getJsonWebKeys().size());
+        Assertions.assertEquals(1, second.join().getJsonWebKeys().size());
+        Assertions.assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void serveStaleKeysWhileRefreshing() {
+        CompletableFuture<String> refresh = new CompletableFuture<>();
+        AtomicInteger call = new AtomicInteger();
+        JwksCache cache = new JwksCache(
+                fetcher(() -> call.getAndIncrement() == 0 ? CompletableFuture.completedFuture(jwks) : refresh),
+                Duration.ofHours(1), Duration.ofSeconds(30), clock);
+
+        cache.getVerificationKeys().join();
+        clock.advance(Duration.ofHours(2));
+
+        // The refresh has not completed yet but the expired key set is still returned
+        CompletableFuture<VerificationKeys> stale = cache.getVerificationKeys();
+        Assertions.assertTrue(stale.isDone());
+        Assertions.assertEquals(1, stale.join().getJsonWebKeys().size());
+        Assertions.assertEquals(2, fetches.get());
+        refresh.complete(jwks);
+    }
+
+    @Test
+    public void unknownKidRefreshesAtMostOncePerInterval() {
+        JwksCache cache = new JwksCache(fetcher(() -> CompletableFuture.completedFuture(jwks)),
+                Duration.ofHours(1), Duration.ofSeconds(30), clock);
+
+        cache.getVerificationKeys().join();
+        for (int i = 0; i < 10; i++) {
+            cache.getVerificationKeys("unknown-key-" + i).join();
+        }
+        Assertions.assertEquals(1, fetches.get());
+
+        clock.advance(Duration.ofSeconds(31));
+        cache.getVerificationKeys("unknown-key").join();
+        cache.getVerificationKeys("unknown-key").join();
+        Assertions.assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void notifyListenersWhenKeySetChanges() {
+        AtomicInteger call = new AtomicInteger();
+        AtomicInteger changes = new AtomicInteger();
+        JwksCache cache = new JwksCache(
+                fetcher(() -> CompletableFuture.completedFuture(call.getAndIncrement() < 2 ? jwks : "{\"keys\": []}")),
+                Duration.ofHours(1), Duration.ofSeconds(30), clock);
+        cache.addKeySetChangeListener(changes::incrementAndGet);
+
+        cache.getVerificationKeys().join();
+        clock.advance(Duration.ofHours(2));
+        cache.getVerificationKeys().join();
+        Assertions.assertEquals(0, changes.get());
+
+        clock.advance(Duration.ofHours(2));
+        cache.getVerificationKeys().join();
+        Assertions.assertEquals(1, changes.get());
+        Assertions.assertEquals(0, cache.getVerificationKeys().join().getJsonWebKeys().size());
+    }
+
+    @Test
+    public void revalidateWithConditionalRequest() {
+        AtomicInteger changes = new AtomicInteger();
+        JwksCache cache = new JwksCache((etag, lastModified) -> {
+            fetches.incrementAndGet();
+            if ("\"v1\"".equals(etag)) {
+                return CompletableFuture.completedFuture(JwksFetcher.Response.notModified());
+            }
+            return CompletableFuture.completedFuture(JwksFetcher.Response.ok(jwks, "\"v1\"", null));
+        }, Duration.ofHours(1), Duration.ofSeconds(30), clock);
+        cache.addKeySetChangeListener(changes::incrementAndGet);
+
+        cache.getVerificationKeys().join();
+        clock.advance(Duration.ofSeconds(31));
+        Assertions.assertEquals(1, cache.getVerificationKeys("unknown-key").join().getJsonWebKeys().size());
+        Assertions.assertEquals(2, fetches.get());
+        Assertions.assertEquals(0, changes.get());
+    }
+
+    @Test
+    public void failWithJoseExceptionIfIssuerIsDown() {
+        JwksCache cache = new JwksCache(fetcher(() -> CompletableFuture.failedFuture(new IOException("Connection refused"))),
+                Duration.ofHours(1), Duration.ofSeconds(30), clock);
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class,
+                () -> cache.getVerificationKeys("demo-key").join());
+        Assertions.assertTrue(e.getCause() instanceof JoseException);
+    }
+
+    @Test
+    public void refreshAtMostOncePerIntervalWhileIssuerIsDown() {
+        AtomicInteger call = new AtomicInteger();
+        JwksCache cache = new JwksCache(fetcher(() -> call.getAndIncrement() == 0
+                        ? CompletableFuture.completedFuture(jwks)
+                        : CompletableFuture.failedFuture(new IOException("Connection refused"))),
+                Duration.ofHours(1), Duration.ofSeconds(30), clock);
+        AtomicInteger coldFetches = new AtomicInteger();
+        JwksCache coldCache = new JwksCache(
+                (etag, lastModified) -> {
+                    coldFetches.incrementAndGet();
+                    return CompletableFuture.failedFuture(new IOException("Connection refused"));
+                }, Duration.ofHours(1), Duration.ofSeconds(30), clock);
+
+        // An expired key set keeps being served, and refreshed once per interval
+        cache.getVerificationKeys().join();
+        clock.advance(Duration.ofHours(2));
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(1, cache.getVerificationKeys().join().getJsonWebKeys().size());
+        }
+        Assertions.assertEquals(2, fetches.get());
+
+        // Without a key set, callers fail with the last error until the interval has passed
+        for (int i = 0; i < 100; i++) {
+            CompletionException e = Assertions.assertThrows(CompletionException.class,
+                    () -> coldCache.getVerificationKeys("demo-key").join());
+            Assertions.assertTrue(e.getCause() instanceof JoseException);
+        }
+        Assertions.assertEquals(1, coldFetches.get());
+
+        clock.advance(Duration.ofSeconds(31));
+        cache.getVerificationKeys().join();
+        Assertions.assertThrows(CompletionException.class, () -> coldCache.getVerificationKeys().join());
+        Assertions.assertEquals(3, fetches.get());
+        Assertions.assertEquals(2, coldFetches.get());
+    }
+
+    @Test
+    public void startFromSnapshot(@TempDir Path directory) throws InterruptedException {
+        Path snapshot = directory.resolve("issuer.jwks.json");
+        JwksCache first = new JwksCache(fetcher(() -> CompletableFuture.completedFuture(jwks)),
+                Duration.ofHours(1), Duration.ofSeconds(30), clock);
+        Assertions.assertFalse(first.loadSnapshot(snapshot, Duration.ofDays(1)));
+        first.getVerificationKeys().join();
+        for (int i = 0; i < 50 && !Files.exists(snapshot); i++) {
+            Thread.sleep(100);
+        }
+
+        // The issuer is down, but the keys of the snapshot are served without fetching them
+        JwksCache second = new JwksCache(fetcher(() -> CompletableFuture.failedFuture(new IOException("Connection refused"))),
+                Duration.ofHours(1), Duration.ofSeconds(30), clock);
+        Assertions.assertTrue(second.loadSnapshot(snapshot, Duration.ofDays(1)));
+        Assertions.assertEquals(1, second.getVerificationKeys("demo-key").join().getJsonWebKeys().size());
+        Assertions.assertEquals(1, fetches.get());
+
+        clock.advance(Duration.ofDays(2));
+        JwksCache third = new JwksCache(fetcher(() -> CompletableFuture.completedFuture(jwks)),
+                Duration.ofHours(1), Duration.ofSeconds(30), clock);
+        Assertions.assertFalse(third.loadSnapshot(snapshot, Duration.ofDays(1)));
+    }
+
+    private JwksFetcher fetcher(Supplier<CompletableFuture<String>> body) {
+        return (etag, lastModified) -> {
+            fetches.incrementAndGet();
+            return body.get().thenApply(content -> JwksFetcher.Response.ok(content, null, null));
+        };
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2021-06-01T12:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
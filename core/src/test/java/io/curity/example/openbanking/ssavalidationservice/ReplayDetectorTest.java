@@ -0,0 +1,125 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+
+class ReplayDetectorTest {
+
+    private static final Instant now = Instant.parse("2021-06-01T12:00:00Z");
+    private static final Clock clock = Clock.fixed(now, ZoneOffset.UTC);
+
+    @Test
+    public void rejectReusedJwtId() throws InvalidJwtException {
+        ReplayDetector detector = new ReplayDetector(1024, ReplayDetector.FullPolicy.REJECT, false, clock);
+        JwtContext first = context("token-1", "Regulatory Body", "jti-1", 0);
+
+        detector.checkNotReplayed(first);
+        detector.recordUse(first, 5*60);
+
+        // The same jti of the same issuer is a replay, even in a different token
+        InvalidJwtException e = Assertions.assertThrows(InvalidJwtException.class,
+                () -> detector.checkNotReplayed(context("token-2", "Regulatory Body", "jti-1", 0)));
+        Assertions.assertTrue(e.hasErrorCode(SsaValidator.REPLAYED));
+        Assertions.assertThrows(InvalidJwtException.class, () -> detector.recordUse(first, 5*60));
+
+        detector.recordUse(context("token-3", "Other Regulator", "jti-1", 0), 5*60);
+        detector.recordUse(context("token-4", "Regulatory Body", "jti-2", 0), 5*60);
+    }
+
+    @Test
+    public void rejectReusedTokenWithoutJwtId() throws InvalidJwtException {
+        ReplayDetector detector = new ReplayDetector(1024, ReplayDetector.FullPolicy.REJECT, true, clock);
+
+        detector.recordUse(context("token-1", "Regulatory Body", null, 0), 5*60);
+        Assertions.assertThrows(InvalidJwtException.class,
+                () -> detector.checkNotReplayed(context("token-1", "Regulatory Body", null, 0)));
+        detector.recordUse(context("token-2", "Regulatory Body", null, 0), 5*60);
+    }
+
+    @Test
+    public void forgetExpiredTokens() throws InvalidJwtException {
+        ReplayDetector detector = new ReplayDetector(1024, ReplayDetector.FullPolicy.REJECT, false, clock);
+
+        // Older than the maximum age and the clock skew, the claim checks reject this token anyway
+        JwtContext tooOld = context("token-1", "Regulatory Body", "jti-1", -(5*60 + SsaValidator.ALLOWED_CLOCK_SKEW_SECONDS));
+        detector.recordUse(tooOld, 5*60);
+        detector.checkNotReplayed(tooOld);
+        detector.recordUse(tooOld, 5*60);
+    }
+
+    @Test
+    public void rejectWhenFull() throws InvalidJwtException {
+        // A capacity of 8 makes two buckets of 8 slots, and every token can go into both of them
+        ReplayDetector detector = new ReplayDetector(8, ReplayDetector.FullPolicy.REJECT, false, clock);
+        for (int i = 0; i < 16; i++) {
+            detector.recordUse(context("token", "Regulatory Body", "jti-" + i, 0), 5*60);
+        }
+
+        Assertions.assertThrows(RejectedExecutionException.class,
+                () -> detector.recordUse(context("token", "Regulatory Body", "jti-16", 0), 5*60));
+        Assertions.assertEquals(1, detector.getStoreFullCount());
+        Assertions.assertThrows(InvalidJwtException.class,
+                () -> detector.checkNotReplayed(context("token", "Regulatory Body", "jti-0", 0)));
+    }
+
+    @Test
+    public void evictEarliestExpiryWhenFull() throws InvalidJwtException {
+        ReplayDetector detector = new ReplayDetector(8, ReplayDetector.FullPolicy.EVICT, true, clock);
+        for (int i = 0; i < 16; i++) {
+            detector.recordUse(context("token", "Regulatory Body", "jti-" + i, -i), 5*60);
+        }
+
+        detector.recordUse(context("token", "Regulatory Body", "jti-16", 0), 5*60);
+        detector.checkNotReplayed(context("token", "Regulatory Body", "jti-15", 0));
+        Assertions.assertThrows(InvalidJwtException.class,
+                () -> detector.checkNotReplayed(context("token", "Regulatory Body", "jti-14", 0)));
+        Assertions.assertThrows(InvalidJwtException.class,
+                () -> detector.checkNotReplayed(context("token", "Regulatory Body", "jti-16", 0)));
+    }
+
+    @Test
+    public void acceptUpToCapacity() throws InvalidJwtException {
+        // A single bucket overflowing long before the store is full would reject genuine tokens
+        int capacity = 100_000;
+        ReplayDetector detector = new ReplayDetector(capacity, ReplayDetector.FullPolicy.REJECT, false, clock);
+        for (int i = 0; i < capacity; i++) {
+            detector.recordUse(context("token", "Regulatory Body", "jti-" + i, 0), 5*60);
+        }
+
+        Assertions.assertEquals(0, detector.getStoreFullCount());
+        Assertions.assertThrows(InvalidJwtException.class,
+                () -> detector.checkNotReplayed(context("token", "Regulatory Body", "jti-0", 0)));
+    }
+
+    @Test
+    public void disabled() throws InvalidJwtException {
+        ReplayDetector detector = new ReplayDetector(0);
+        JwtContext context = context("token", "Regulatory Body", "jti-1", 0);
+
+        Assertions.assertFalse(detector.isEnabled());
+        detector.recordUse(context, 5*60);
+        detector.recordUse(context, 5*60);
+    }
+
+    private static JwtContext context(String jwt, String issuer, String jwtId, int issuedAtOffsetSeconds) {
+        JwtClaims claims = new JwtClaims();
+        claims.setIssuer(issuer);
+        if (jwtId != null) {
+            claims.setJwtId(jwtId);
+        }
+        NumericDate issuedAt = NumericDate.fromMilliseconds(now.toEpochMilli());
+        issuedAt.addSeconds(issuedAtOffsetSeconds);
+        claims.setIssuedAt(issuedAt);
+        return new JwtContext(jwt, claims, Collections.emptyList());
+    }
+}
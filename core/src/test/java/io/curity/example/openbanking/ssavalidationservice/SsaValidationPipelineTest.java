@@ -0,0 +1,158 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.RsaJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.lang.JoseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SsaValidationPipelineTest {
+
+    private static final String clientJwksUri = "https://keystore.example.com/client/application.jwks";
+
+    private static RsaJsonWebKey signingKey;
+    private static RsaJsonWebKey otherKey;
+    private static String jwks;
+
+    @BeforeAll
+    static void generateKeys() throws JoseException {
+        signingKey = RsaJwkGenerator.generateJwk(2048);
+        signingKey.setKeyId("demo-key");
+        otherKey = RsaJwkGenerator.generateJwk(2048);
+        otherKey.setKeyId("demo-key");
+        jwks = new JsonWebKeySet(signingKey).toJson(JsonWebKey.OutputControlLevel.PUBLIC_ONLY);
+    }
+
+    @Test
+    public void validateSynchronously() throws JoseException, InvalidJwtException {
+        SsaValidationPipeline pipeline = new SsaValidationPipeline(registry(JwksFetcher.of(jwks)));
+
+        pipeline.validate(createJwt(signingKey, "Regulatory Body"));
+        Assertions.assertThrows(InvalidJwtException.class, () -> pipeline.validate(createJwt(otherKey, "Regulatory Body")));
+        Assertions.assertThrows(InvalidJwtException.class, () -> pipeline.validate(createJwt(signingKey, "Some other authority")));
+        Assertions.assertThrows(InvalidJwtException.class, () -> pipeline.validate("not.a.jwt"));
+    }
+
+    @Test
+    public void validateAsynchronously() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            RecordingListener listener = new RecordingListener();
+            SsaValidationPipeline pipeline = new SsaValidationPipeline(registry(JwksFetcher.of(jwks)),
+                    new VerifiedSsaCache(0), new ReplayDetector(0), executor, listener);
+
+            pipeline.validateAsync(createJwt(signingKey, "Regulatory Body")).get();
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                    () -> pipeline.validateAsync(createJwt(otherKey, "Regulatory Body")).get());
+            Assertions.assertTrue(e.getCause() instanceof InvalidJwtException);
+
+            Assertions.assertEquals(1, listener.valid.get());
+            Assertions.assertEquals(1, listener.failed.get());
+            Assertions.assertEquals(2, listener.signatures.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectReplayAndReportUnavailableKeys() throws JoseException, InvalidJwtException {
+        SsaValidationPipeline pipeline = new SsaValidationPipeline(registry(JwksFetcher.of(jwks)),
+                new VerifiedSsaCache(100), new ReplayDetector(100), Runnable::run, ValidationListener.NONE);
+        String ssa = createJwt(signingKey, "Regulatory Body");
+        pipeline.validate(ssa);
+        Assertions.assertThrows(InvalidJwtException.class, () -> pipeline.validate(ssa));
+
+        SsaValidationPipeline unavailable = new SsaValidationPipeline(registry(
+                (etag, lastModified) -> CompletableFuture.failedFuture(new IOException("Connection refused"))));
+        Assertions.assertThrows(JoseException.class, () -> unavailable.validate(ssa));
+
+        SsaValidationPipeline overloaded = new SsaValidationPipeline(registry(JwksFetcher.of(jwks)),
+                new VerifiedSsaCache(0), new ReplayDetector(0),
+                task -> { throw new RejectedExecutionException("full"); }, ValidationListener.NONE);
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> overloaded.validateAsync(createJwt(signingKey, "Regulatory Body")).get());
+        Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+
+    @Test
+    public void prefetchClientJwksOfValidTokens() throws JoseException, InvalidJwtException {
+        AtomicInteger fetches = new AtomicInteger();
+        ClientJwksCache clientJwksCache = new ClientJwksCache(jwksUri -> {
+            fetches.incrementAndGet();
+            return JwksFetcher.of(jwks);
+        }, Runnable::run, 10, Duration.ofMinutes(5), 1, Clock.systemUTC());
+        SsaValidationPipeline pipeline = new SsaValidationPipeline(registry(JwksFetcher.of(jwks)),
+                new VerifiedSsaCache(0), new ReplayDetector(0), Runnable::run, ValidationListener.NONE, clientJwksCache);
+
+        Assertions.assertThrows(InvalidJwtException.class, () -> pipeline.validate(createJwt(otherKey, "Regulatory Body")));
+        Assertions.assertEquals(0, fetches.get());
+
+        pipeline.validate(createJwt(signingKey, "Regulatory Body"));
+        pipeline.validate(createJwt(signingKey, "Regulatory Body"));
+        Assertions.assertEquals(1, fetches.get());
+        Assertions.assertNotNull(clientJwksCache.get(clientJwksUri));
+    }
+
+    private static IssuerRegistry registry(JwksFetcher fetcher) {
+        SsaValidator validator = new SsaValidator("Regulatory Body", 5*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        JwksCache jwksCache = new JwksCache(fetcher, Duration.ofHours(1), Duration.ofSeconds(30));
+        return new IssuerRegistry(List.of(new TrustedIssuer("Regulatory Body", validator, jwksCache)));
+    }
+
+    private static String createJwt(RsaJsonWebKey key, String issuer) throws JoseException {
+        JwtClaims claims = new JwtClaims();
+        claims.setIssuer(issuer);
+        claims.setIssuedAt(NumericDate.now());
+        claims.setGeneratedJwtId();
+        claims.setStringClaim(ClientJwksCache.SOFTWARE_JWKS_URI, clientJwksUri);
+
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setPayload(claims.toJson());
+        jws.setKey(key.getPrivateKey());
+        jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        jws.setKeyIdHeaderValue(key.getKeyId());
+        return jws.getCompactSerialization();
+    }
+
+    private static class RecordingListener implements ValidationListener {
+        private final AtomicInteger valid = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger signatures = new AtomicInteger();
+
+        @Override
+        public void recordStage(Stage stage, long durationNanos) {
+            if (stage == Stage.SIGNATURE) {
+                signatures.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void recordValid(boolean cached) {
+            valid.incrementAndGet();
+        }
+
+        @Override
+        public void recordFailure(Throwable error) {
+            failed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.RsaJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.jwt.consumer.ErrorCodes;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.InvalidJwtSignatureException;
+import org.jose4j.jwt.consumer.JwtContext;
+import org.jose4j.lang.JoseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+class SsaValidatorTest {
+
+    private static RsaJsonWebKey signingKey;
+    private static RsaJsonWebKey otherKey;
+
+    private final SsaValidator validator = new SsaValidator("Regulatory Body", 5*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+
+    @BeforeAll
+    static void generateKeys() throws JoseException {
+        signingKey = RsaJwkGenerator.generateJwk(2048);
+        signingKey.setKeyId("demo-key");
+        otherKey = RsaJwkGenerator.generateJwk(2048);
+        otherKey.setKeyId("demo-key");
+    }
+
+    @Test
+    public void validToken() throws JoseException, InvalidJwtException {
+        String ssa = createJwt("Regulatory Body", NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+
+        JwtContext jwtContext = validator.checkClaims(ssa);
+        Assertions.assertEquals("demo-key", SsaValidator.getKeyId(jwtContext));
+        validator.verifySignature(jwtContext, publishedKeys(signingKey));
+    }
+
+    @Test
+    public void rejectBeforeSignatureCheck() throws JoseException {
+        NumericDate tooOld = NumericDate.now();
+        tooOld.addSeconds(-10*60);
+
+        Assertions.assertThrows(InvalidJwtException.class, () -> validator.checkClaims("not.a.jwt"));
+        Assertions.assertThrows(InvalidJwtException.class, () -> validator.checkClaims("a.b"));
+        Assertions.assertThrows(InvalidJwtException.class, () -> validator.checkClaims(
+                createJwt("Some other authority", NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256)));
+        Assertions.assertThrows(InvalidJwtException.class, () -> validator.checkClaims(
+                createJwt("Regulatory Body", tooOld, AlgorithmIdentifiers.RSA_PSS_USING_SHA256)));
+        Assertions.assertThrows(InvalidJwtException.class, () -> validator.checkClaims(
+                createJwt("Regulatory Body", NumericDate.now(), AlgorithmIdentifiers.RSA_USING_SHA256)));
+    }
+
+    @Test
+    public void rejectInvalidSignature() throws JoseException, InvalidJwtException {
+        String ssa = createJwt("Regulatory Body", NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+
+        JwtContext jwtContext = validator.checkClaims(ssa);
+        Assertions.assertThrows(InvalidJwtSignatureException.class, () -> validator.verifySignature(jwtContext, publishedKeys(otherKey)));
+        Assertions.assertThrows(InvalidJwtException.class, () -> validator.verifySignature(jwtContext, Collections.emptyList()));
+    }
+
+    @Test
+    public void rejectUnrecognizedCriticalHeader() throws JoseException, InvalidJwtException {
+        SsaValidator rsaValidator = new SsaValidator("Regulatory Body", 5*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256,
+                AlgorithmIdentifiers.RSA_USING_SHA256);
+        VerificationKeys keys = new VerificationKeys(publishedKeys(signingKey));
+
+        for (String algorithm : List.of(AlgorithmIdentifiers.RSA_PSS_USING_SHA256, AlgorithmIdentifiers.RSA_USING_SHA256)) {
+            JwtClaims claims = new JwtClaims();
+            claims.setIssuer("Regulatory Body");
+            claims.setIssuedAtToNow();
+
+            JsonWebSignature jws = new JsonWebSignature();
+            jws.setPayload(claims.toJson());
+            jws.setKey(signingKey.getPrivateKey());
+            jws.setAlgorithmHeaderValue(algorithm);
+            jws.setKeyIdHeaderValue(signingKey.getKeyId());
+            jws.setHeader("urn:example:must-understand", "yes");
+            jws.setCriticalHeaderNames("urn:example:must-understand");
+
+            // The signature is valid, but the token must not be accepted by a recipient that does not understand it
+            JwtContext jwtContext = rsaValidator.checkClaims(jws.getCompactSerialization());
+            InvalidJwtException e = Assertions.assertThrows(InvalidJwtException.class,
+                    () -> rsaValidator.verifySignature(jwtContext, rsaValidator.selectKey(jwtContext, keys)));
+            Assertions.assertTrue(e.hasErrorCode(ErrorCodes.SIGNATURE_INVALID));
+        }
+    }
+
+    @Test
+    public void reuseSignaturePerAlgorithm() throws JoseException, InvalidJwtException {
+        SsaValidator rsaValidator = new SsaValidator("Regulatory Body", 5*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256,
+                AlgorithmIdentifiers.RSA_PSS_USING_SHA512, AlgorithmIdentifiers.RSA_USING_SHA256);
+        VerificationKeys keys = new VerificationKeys(publishedKeys(signingKey));
+
+        // The same Signature of this thread verifies one token after the other, valid or not
+        for (String algorithm : List.of(AlgorithmIdentifiers.RSA_PSS_USING_SHA256, AlgorithmIdentifiers.RSA_PSS_USING_SHA512,
+                AlgorithmIdentifiers.RSA_USING_SHA256)) {
+            for (int i = 0; i < 3; i++) {
+                JwtContext valid = rsaValidator.checkClaims(createJwt("Regulatory Body", NumericDate.now(), algorithm));
+                rsaValidator.verifySignature(valid, rsaValidator.selectKey(valid, keys));
+
+                String ssa = createJwt("Regulatory Body", NumericDate.now(), algorithm);
+                JwtContext tampered = rsaValidator.checkClaims(ssa.substring(0, ssa.length() - 4) + "AAAA");
+                Assertions.assertThrows(InvalidJwtException.class,
+                        () -> rsaValidator.verifySignature(tampered, rsaValidator.selectKey(tampered, keys)));
+            }
+        }
+    }
+
+    private static List<JsonWebKey> publishedKeys(RsaJsonWebKey key) throws JoseException {
+        return Collections.singletonList(JsonWebKey.Factory.newJwk(key.toJson(JsonWebKey.OutputControlLevel.PUBLIC_ONLY)));
+    }
+
+    private static String createJwt(String issuer, NumericDate iat, String algorithm) throws JoseException {
+        JwtClaims claims = new JwtClaims();
+        claims.setIssuer(issuer);
+        claims.setIssuedAt(iat);
+
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setPayload(claims.toJson());
+        jws.setKey(signingKey.getPrivateKey());
+        jws.setAlgorithmHeaderValue(algorithm);
+        jws.setKeyIdHeaderValue(signingKey.getKeyId());
+        return jws.getCompactSerialization();
+    }
+}
@@ -0,0 +1,83 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.EcJwkGenerator;
+import org.jose4j.jwk.EllipticCurveJsonWebKey;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.RsaJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jwk.Use;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.keys.EllipticCurves;
+import org.jose4j.lang.JoseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class VerificationKeysTest {
+
+    @Test
+    public void indexByKeyIdAndAlgorithm() throws JoseException {
+        RsaJsonWebKey rsaKey = rsaKey("rsa-key", 2048);
+        RsaJsonWebKey rs256Key = rsaKey("rs256-key", 2048);
+        rs256Key.setAlgorithm(AlgorithmIdentifiers.RSA_USING_SHA256);
+        EllipticCurveJsonWebKey ecKey = EcJwkGenerator.generateJwk(EllipticCurves.P256);
+        ecKey.setKeyId("ec-key");
+
+        VerificationKeys keys = new VerificationKeys(List.of(rsaKey, rs256Key, ecKey));
+
+        Assertions.assertEquals(rsaKey.getPublicKey(), keys.getKey("rsa-key", AlgorithmIdentifiers.RSA_PSS_USING_SHA256));
+        Assertions.assertEquals(rsaKey.getPublicKey(), keys.getKey("rsa-key", AlgorithmIdentifiers.RSA_USING_SHA512));
+        Assertions.assertNull(keys.getKey("rsa-key", AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256));
+        Assertions.assertEquals(rs256Key.getPublicKey(), keys.getKey("rs256-key", AlgorithmIdentifiers.RSA_USING_SHA256));
+        Assertions.assertNull(keys.getKey("rs256-key", AlgorithmIdentifiers.RSA_PSS_USING_SHA256));
+        Assertions.assertEquals(ecKey.getPublicKey(), keys.getKey("ec-key", AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256));
+        Assertions.assertNull(keys.getKey("ec-key", AlgorithmIdentifiers.ECDSA_USING_P384_CURVE_AND_SHA384));
+        Assertions.assertNull(keys.getKey("unknown-key", AlgorithmIdentifiers.RSA_PSS_USING_SHA256));
+        Assertions.assertEquals(3, keys.getJsonWebKeys().size());
+    }
+
+    @Test
+    public void skipKeysThatCannotVerify() throws JoseException {
+        RsaJsonWebKey encryptionKey = rsaKey("encryption-key", 2048);
+        encryptionKey.setUse(Use.ENCRYPTION);
+        RsaJsonWebKey shortKey = rsaKey("short-key", 1024);
+        RsaJsonWebKey signingKey = rsaKey("signing-key", 2048);
+        signingKey.setUse(Use.SIGNATURE);
+
+        VerificationKeys keys = new VerificationKeys(List.<JsonWebKey>of(encryptionKey, shortKey, signingKey));
+
+        Assertions.assertFalse(keys.containsKeyId("encryption-key"));
+        Assertions.assertFalse(keys.containsKeyId("short-key"));
+        Assertions.assertTrue(keys.containsKeyId("signing-key"));
+        Assertions.assertEquals(3, keys.getJsonWebKeys().size());
+    }
+
+    @Test
+    public void unknownKeyIdWithoutUsableKey() throws JoseException {
+        RsaJsonWebKey mislabelledKey = rsaKey("mislabelled-key", 2048);
+        mislabelledKey.setAlgorithm(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256);
+        RsaJsonWebKey rsaKey = rsaKey("rsa-key", 2048);
+        String jwks = "{\"keys\": [" +
+                "{\"kty\": \"OKP\", \"crv\": \"Ed25519\", \"kid\": \"okp-key\", " +
+                    "\"x\": \"11qYAYKxCrfVS_7TyWQHOg7hcvPapiMlrwIaaPcHURo\"}," +
+                mislabelledKey.toJson() + "," +
+                rsaKey.toJson() +
+            "]}";
+
+        VerificationKeys keys = new VerificationKeys(new JsonWebKeySet(jwks).getJsonWebKeys());
+
+        // Tokens with these kids refresh the key set instead of failing with an unknown key until it expires
+        Assertions.assertFalse(keys.containsKeyId("okp-key"));
+        Assertions.assertFalse(keys.containsKeyId("mislabelled-key"));
+        Assertions.assertTrue(keys.containsKeyId("rsa-key"));
+        Assertions.assertEquals(rsaKey.getPublicKey(), keys.getKey("rsa-key", AlgorithmIdentifiers.RSA_PSS_USING_SHA256));
+    }
+
+    private static RsaJsonWebKey rsaKey(String kid, int bits) throws JoseException {
+        RsaJsonWebKey key = RsaJwkGenerator.generateJwk(bits);
+        key.setKeyId(kid);
+        return key;
+    }
+}
@@ -0,0 +1,61 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.NumericDate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+class VerifiedSsaCacheTest {
+
+    private static final Instant now = Instant.parse("2021-06-01T12:00:00Z");
+
+    @Test
+    public void expireWithTokenLifetime() {
+        NumericDate issuedAt = NumericDate.fromMilliseconds(now.toEpochMilli());
+        issuedAt.addSeconds(-4*60);
+
+        VerifiedSsaCache cache = new VerifiedSsaCache(10, Clock.fixed(now, ZoneOffset.UTC));
+        cache.addVerified("token", claims(issuedAt), 5*60);
+        Assertions.assertTrue(cache.isVerified("token"));
+        Assertions.assertFalse(cache.isVerified("other-token"));
+
+        VerifiedSsaCache later = new VerifiedSsaCache(10, Clock.fixed(now.plusSeconds(61), ZoneOffset.UTC));
+        later.addVerified("token", claims(issuedAt), 5*60);
+        Assertions.assertFalse(later.isVerified("token"));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        VerifiedSsaCache cache = new VerifiedSsaCache(2, Clock.fixed(now, ZoneOffset.UTC));
+        NumericDate issuedAt = NumericDate.fromMilliseconds(now.toEpochMilli());
+
+        cache.addVerified("first", claims(issuedAt), 5*60);
+        cache.addVerified("second", claims(issuedAt), 5*60);
+        Assertions.assertTrue(cache.isVerified("first"));
+        cache.addVerified("third", claims(issuedAt), 5*60);
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertTrue(cache.isVerified("first"));
+        Assertions.assertFalse(cache.isVerified("second"));
+
+        cache.clear();
+        Assertions.assertFalse(cache.isVerified("first"));
+    }
+
+    @Test
+    public void disabled() {
+        VerifiedSsaCache cache = new VerifiedSsaCache(0);
+        cache.addVerified("token", claims(NumericDate.now()), 5*60);
+        Assertions.assertFalse(cache.isVerified("token"));
+    }
+
+    private static JwtClaims claims(NumericDate issuedAt) {
+        JwtClaims claims = new JwtClaims();
+        claims.setIssuedAt(NumericDate.fromMilliseconds(issuedAt.getValueInMillis()));
+        return claims;
+    }
+}
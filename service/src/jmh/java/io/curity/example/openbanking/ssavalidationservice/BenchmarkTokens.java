@@ -0,0 +1,67 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.lang.JoseException;
+
+import java.security.Key;
+import java.util.UUID;
+
+/**
+ * Keys and software statements for the benchmarks, based on the mock issuer in {@link MockController}.
+ */
+final class BenchmarkTokens {
+
+    static final String issuerName = "Regulatory Body";
+
+    private BenchmarkTokens() {
+    }
+
+    static PublicJsonWebKey issuerKey() throws JoseException {
+        return (PublicJsonWebKey) JsonWebKey.Factory.newJwk(MockController.issuerJwk);
+    }
+
+    static String issuerJwks() {
+        return new MockController().getJsonWebKeySet().getBody().block();
+    }
+
+    static NumericDate secondsAgo(long seconds) {
+        NumericDate date = NumericDate.now();
+        date.addSeconds(-seconds);
+        return date;
+    }
+
+    // Same claims as the software statements of the mock issuer
+    static String createSsa(Key signingKey, String issuer, String kid, NumericDate iat, String algorithm) throws JoseException {
+        UUID softwareId = UUID.randomUUID();
+        UUID orgId = UUID.randomUUID();
+
+        JwtClaims claims = new JwtClaims();
+        claims.setIssuer(issuer);
+        claims.setIssuedAt(iat);
+        claims.setStringClaim("software_id", softwareId.toString());
+        claims.setStringClaim("software_client_id", "JNA9r-duS4uCzL89z");
+        claims.setStringClaim("software_client_uri", "https://tpp.example.com");
+        claims.setStringClaim("software_logo_uri", "https://example.com/images/logo.png");
+        claims.setStringClaim("software_tos_uri", "https://example.com/termsofservices");
+        claims.setStringClaim("software_policy_uri", "https://example.com/policy");
+        claims.setStringListClaim("software_redirect_uris", "https://tpp.example.com/","https://example.com/callback");
+        claims.setStringClaim("software_jwks_uri", String.format("https://keystore.regulatory.body/%s/%s/application.jwks", orgId, softwareId));
+        claims.setStringClaim("software_environment", "Test");
+        claims.setClaim("software_version", 0.1);
+        claims.setStringListClaim("software_roles", "Role1", "Role2");
+        claims.setClaim("org_id", orgId);
+        claims.setClaim("org_number", "1871679847");
+        claims.setClaim("org_name", "Test Company");
+
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setPayload(claims.toJson());
+        jws.setKey(signingKey);
+        jws.setAlgorithmHeaderValue(algorithm);
+        jws.setKeyIdHeaderValue(kid);
+        return jws.getCompactSerialization();
+    }
+}
@@ -0,0 +1,98 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.RsaJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jwk.VerificationJwkSelector;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtContext;
+import org.jose4j.lang.JoseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and indexing of the JWKS and selection of the verification key for key sets of different sizes, with the
+ * jose4j selector and with the index of {@link VerificationKeys}. The software statement is signed with the last key
+ * of the set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JwksBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int keyCount;
+
+    private final VerificationJwkSelector keySelector = new VerificationJwkSelector();
+
+    private String jwks;
+    private List<JsonWebKey> keys;
+    private JsonWebSignature jws;
+    private SsaValidator ssaValidator;
+    private VerificationKeys verificationKeys;
+    private JwtContext jwtContext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JoseException, InvalidJwtException {
+        List<JsonWebKey> publicKeys = new ArrayList<>();
+        RsaJsonWebKey key = null;
+        for (int i = 0; i < keyCount; i++) {
+            key = RsaJwkGenerator.generateJwk(2048);
+            key.setKeyId("key-" + i);
+            key.setUse("sig");
+            publicKeys.add(JsonWebKey.Factory.newJwk(key.toJson(JsonWebKey.OutputControlLevel.PUBLIC_ONLY)));
+        }
+        jwks = new JsonWebKeySet(publicKeys).toJson();
+        keys = new JsonWebKeySet(jwks).getJsonWebKeys();
+
+        String ssa = BenchmarkTokens.createSsa(key.getPrivateKey(), BenchmarkTokens.issuerName,
+                key.getKeyId(), NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        jws = new JsonWebSignature();
+        jws.setCompactSerialization(ssa);
+        ssaValidator = new SsaValidator(BenchmarkTokens.issuerName, 5*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        verificationKeys = new VerificationKeys(keys);
+        jwtContext = SsaValidator.parse(ssa);
+    }
+
+    @Benchmark
+    public List<JsonWebKey> parseJwks() throws JoseException {
+        return new JsonWebKeySet(jwks).getJsonWebKeys();
+    }
+
+    @Benchmark
+    public JsonWebKey selectKey() throws JoseException {
+        return keySelector.select(jws, keys);
+    }
+
+    @Benchmark
+    public VerificationKeys indexJwks() throws JoseException {
+        return new VerificationKeys(new JsonWebKeySet(jwks).getJsonWebKeys());
+    }
+
+    @Benchmark
+    public PublicKey selectIndexedKey() throws InvalidJwtException {
+        return ssaValidator.selectKey(jwtContext, verificationKeys);
+    }
+}
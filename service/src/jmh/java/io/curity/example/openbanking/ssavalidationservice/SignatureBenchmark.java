@@ -0,0 +1,74 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.RsaJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtContext;
+import org.jose4j.lang.JoseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PS256 signature verification of a software statement for different RSA key sizes, with a new jose4j
+ * {@link JsonWebSignature} per token and with the reused {@link java.security.Signature} of {@link SsaValidator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SignatureBenchmark {
+
+    @Param({"2048", "3072", "4096"})
+    public int keySize;
+
+    private String ssa;
+    private PublicKey verificationKey;
+    private SsaValidator ssaValidator;
+    private JwtContext jwtContext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JoseException {
+        RsaJsonWebKey key = RsaJwkGenerator.generateJwk(keySize);
+        verificationKey = key.getPublicKey();
+        ssa = BenchmarkTokens.createSsa(key.getPrivateKey(), BenchmarkTokens.issuerName, "demo-key",
+                NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        ssaValidator = new SsaValidator(BenchmarkTokens.issuerName, 5*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        try {
+            jwtContext = SsaValidator.parse(ssa);
+        } catch (InvalidJwtException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public boolean verifyPs256() throws JoseException {
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setCompactSerialization(ssa);
+        jws.setKey(verificationKey);
+        return jws.verifySignature();
+    }
+
+    @Benchmark
+    public JwtContext verifyPs256Reused() throws InvalidJwtException {
+        ssaValidator.verifySignature(jwtContext, verificationKey);
+        return jwtContext;
+    }
+}
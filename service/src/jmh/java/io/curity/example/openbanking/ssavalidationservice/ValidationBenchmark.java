@@ -0,0 +1,131 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.lang.JoseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end processing of /validate, from the request body to the result, for a valid software statement and for
+ * each rejection path. The JWKS is served by a local stand-in, so no network is needed. The throughput of valid
+ * software statements is measured by {@link ValidationThroughputBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({"valid", "wrong_issuer", "expired_iat", "wrong_alg", "unknown_kid", "malformed"})
+    public String scenario;
+
+    private VerificationScheduler verificationScheduler;
+    private SsaValidationPipeline pipeline;
+    private SsaValidationController controller;
+    private String ssaStr;
+    private byte[] ssa;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JoseException {
+        SsaValidator ssaValidator = new SsaValidator(BenchmarkTokens.issuerName, 5*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        JwksCache jwksCache = new JwksCache(JwksFetcher.of(BenchmarkTokens.issuerJwks()),
+                Duration.ofHours(1), Duration.ofSeconds(30));
+        verificationScheduler = new VerificationScheduler(Runtime.getRuntime().availableProcessors(), 1024);
+        IssuerRegistry issuerRegistry = new IssuerRegistry(List.of(
+                new TrustedIssuer(BenchmarkTokens.issuerName, ssaValidator, jwksCache)));
+        ValidationMetrics validationMetrics = new ValidationMetrics(new SimpleMeterRegistry());
+        pipeline = new SsaValidationPipeline(issuerRegistry, new VerifiedSsaCache(0), new ReplayDetector(0),
+                verificationScheduler.getExecutor(), validationMetrics);
+        controller = new SsaValidationController(pipeline, verificationScheduler, validationMetrics);
+
+        PublicJsonWebKey issuerKey = BenchmarkTokens.issuerKey();
+        switch (scenario) {
+            case "valid":
+                ssaStr = BenchmarkTokens.createSsa(issuerKey.getPrivateKey(), BenchmarkTokens.issuerName, "demo-key",
+                        NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+                break;
+            case "wrong_issuer":
+                ssaStr = BenchmarkTokens.createSsa(issuerKey.getPrivateKey(), "Some other authority", "demo-key",
+                        NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+                break;
+            case "expired_iat":
+                ssaStr = BenchmarkTokens.createSsa(issuerKey.getPrivateKey(), BenchmarkTokens.issuerName, "demo-key",
+                        BenchmarkTokens.secondsAgo(10*60), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+                break;
+            case "wrong_alg":
+                ssaStr = BenchmarkTokens.createSsa(issuerKey.getPrivateKey(), BenchmarkTokens.issuerName, "demo-key",
+                        NumericDate.now(), AlgorithmIdentifiers.RSA_USING_SHA256);
+                break;
+            case "unknown_kid":
+                ssaStr = BenchmarkTokens.createSsa(RsaJwkGenerator.generateJwk(2048).getPrivateKey(), BenchmarkTokens.issuerName,
+                        "unknown-key", NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+                break;
+            case "malformed":
+                // Rejected while the body is read, at the first character outside the base64url alphabet
+                ssaStr = BenchmarkTokens.createSsa(issuerKey.getPrivateKey(), BenchmarkTokens.issuerName, "demo-key",
+                        NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256).replace('-', '+');
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scenario " + scenario);
+        }
+
+        ssa = ssaStr.getBytes(StandardCharsets.US_ASCII);
+
+        // Load the keys before measuring
+        validate(this);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        verificationScheduler.destroy();
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return validate(this);
+    }
+
+    // The same validation through the synchronous API of the core, as used in-process without HTTP
+    @Benchmark
+    public boolean validateInProcess() {
+        try {
+            pipeline.validate(ssaStr);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static boolean validate(ValidationBenchmark state) {
+        try {
+            state.controller.validate(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(state.ssa))).block();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.lang.JoseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of /validate for a valid software statement with a growing number of concurrent callers. The rejection
+ * paths are covered by the latency benchmarks of {@link ValidationBenchmark}.
+ *
+ * Every operation must be a successful validation: a token that is rejected fails the benchmark instead of being
+ * counted, and the verification queue is large enough that it never turns a caller away.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ValidationThroughputBenchmark {
+
+    // Each caller waits for its own validation, so the queue holds at most one task per benchmark thread
+    private static final int queueSize = 1 << 16;
+
+    private VerificationScheduler verificationScheduler;
+    private SsaValidationController controller;
+    private byte[] ssa;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JoseException {
+        SsaValidator ssaValidator = new SsaValidator(BenchmarkTokens.issuerName, 5*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        JwksCache jwksCache = new JwksCache(JwksFetcher.of(BenchmarkTokens.issuerJwks()),
+                Duration.ofHours(1), Duration.ofSeconds(30));
+        verificationScheduler = new VerificationScheduler(Runtime.getRuntime().availableProcessors(), queueSize);
+        IssuerRegistry issuerRegistry = new IssuerRegistry(List.of(
+                new TrustedIssuer(BenchmarkTokens.issuerName, ssaValidator, jwksCache)));
+        ValidationMetrics validationMetrics = new ValidationMetrics(new SimpleMeterRegistry());
+        SsaValidationPipeline pipeline = new SsaValidationPipeline(issuerRegistry, new VerifiedSsaCache(0),
+                new ReplayDetector(0), verificationScheduler.getExecutor(), validationMetrics);
+        controller = new SsaValidationController(pipeline, verificationScheduler, validationMetrics);
+
+        ssa = BenchmarkTokens.createSsa(BenchmarkTokens.issuerKey().getPrivateKey(), BenchmarkTokens.issuerName,
+                "demo-key", NumericDate.now(), AlgorithmIdentifiers.RSA_PSS_USING_SHA256)
+                .getBytes(StandardCharsets.US_ASCII);
+
+        // Load the keys before measuring
+        validate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        verificationScheduler.destroy();
+        if (verificationScheduler.getRejectedCount() > 0) {
+            throw new IllegalStateException(verificationScheduler.getRejectedCount() + " verifications were rejected");
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void throughput1Thread() {
+        validate();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void throughput4Threads() {
+        validate();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void throughputMaxThreads() {
+        validate();
+    }
+
+    // Throws if the token is not valid, so that a failed validation is never counted as an operation
+    private void validate() {
+        controller.validate(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(ssa))).block();
+    }
+}
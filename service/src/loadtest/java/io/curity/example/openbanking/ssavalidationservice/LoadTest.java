@@ -0,0 +1,232 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.lang.JoseException;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Load test of the whole service. Starts the application on a free local port, signs a corpus of software statements
+ * with the mock issuer, then posts them to {@code /validate} over a reactive {@link WebClient}, either at a fixed
+ * concurrency (closed loop) or at a fixed arrival rate (open loop). Reports throughput and latency percentiles and
+ * exits with status 1 if a budget is exceeded.
+ *
+ * In open-loop runs the latency is measured from the time at which a request was due, so that a slow service is not
+ * hidden by requests that were sent late.
+ */
+public final class LoadTest {
+
+    private static final String rotatedKeyId = "demo-key-2";
+
+    private final LoadTestOptions options;
+    private final AtomicReference<String> publishedJwks = new AtomicReference<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile List<String> validTokens;
+    private List<String> invalidTokens = List.of();
+    private WebClient webClient;
+
+    private LoadTest(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean passed = new LoadTest(LoadTestOptions.parse(args)).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        int port = findFreePort();
+        String baseUri = "http://localhost:" + port;
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", port);
+        properties.put("spring.main.banner-mode", "off");
+        // The scenarios decide when the keys are loaded: cold by the first requests, rotation from its own route
+        properties.put("jwt.jwks_preload", false);
+        if (options.scenario == LoadTestOptions.Scenario.ROTATION) {
+            // The keys are served by the load test, so that they can be rotated during the run. Tokens with the new
+            // kid must be able to trigger a refresh soon after the initial fetch.
+            properties.put("jwt.issuer.jwks_uri", baseUri + "/loadtest/jwks");
+            properties.put("jwt.issuer.jwks_min_refresh_seconds", 1);
+        } else {
+            properties.put("jwt.issuer.jwks_uri", baseUri + "/jwks");
+        }
+        properties.putAll(options.applicationProperties);
+
+        // Passed as command line arguments, so that they take precedence over application.properties
+        String[] arguments = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(SsaValidationServiceApplication.class);
+        if (options.scenario == LoadTestOptions.Scenario.ROTATION) {
+            // The route serves the key set of the mock issuer from the start
+            publishedJwks.set(getMockIssuerJwks());
+            builder.initializers((ApplicationContextInitializer<GenericApplicationContext>) context ->
+                    context.registerBean("loadTestJwks", RouterFunction.class, this::jwksRoute));
+        }
+        ConfigurableApplicationContext application = builder.run(arguments);
+
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(options.rate > 0 ? 1024 : options.concurrency)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        try {
+            webClient = WebClient.builder()
+                    .baseUrl(baseUri)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                    .build();
+            return runScenario();
+        } finally {
+            connections.dispose();
+            application.close();
+        }
+    }
+
+    private boolean runScenario() throws Exception {
+        validTokens = fetchTokens("count=" + options.tokens);
+        List<String> rotatedTokens = List.of();
+        String rotatedJwks = null;
+        switch (options.scenario) {
+            case ROTATION:
+                JsonWebKey currentKey = new JsonWebKeySet(publishedJwks.get()).getJsonWebKeys().get(0);
+                JsonWebKey rotatedKey = JsonWebKey.Factory.newJwk(currentKey.toJson());
+                rotatedKey.setKeyId(rotatedKeyId);
+                rotatedJwks = new JsonWebKeySet(currentKey, rotatedKey).toJson();
+                rotatedTokens = fetchTokens("count=" + options.tokens + "&kid=" + rotatedKeyId);
+                break;
+            case MIXED:
+                invalidTokens = fetchTokens("count=" + options.tokens +
+                        "&invalid=signature,expired,future,issuer,alg,kid,malformed");
+                break;
+            default:
+                break;
+        }
+
+        if (!options.warmup.isZero()) {
+            System.out.printf("Warming up for %d s%n", options.warmup.toSeconds());
+            drive(options.warmup, new LoadTestResult());
+        }
+
+        if (options.scenario == LoadTestOptions.Scenario.ROTATION) {
+            String newJwks = rotatedJwks;
+            List<String> newTokens = rotatedTokens;
+            Mono.delay(options.duration.dividedBy(2)).subscribe(tick -> {
+                publishedJwks.set(newJwks);
+                validTokens = newTokens;
+                System.out.println("Rotated the signing key of the issuer");
+            });
+        }
+
+        System.out.printf("Running for %d s%n", options.duration.toSeconds());
+        LoadTestResult result = new LoadTestResult();
+        drive(options.duration, result);
+
+        result.print(options, System.out);
+        result.write(options, new File(options.resultFile));
+        List<String> violations = result.checkBudgets(options);
+        violations.forEach(violation -> System.out.println("FAILED: " + violation));
+        return violations.isEmpty();
+    }
+
+    // Streamed line by line, since the whole corpus exceeds the in-memory limit of the WebClient codecs
+    private List<String> fetchTokens(String query) {
+        return webClient.get()
+                .uri("/softwarestatements?" + query)
+                .accept(MediaType.TEXT_PLAIN)
+                .retrieve()
+                .bodyToFlux(String.class)
+                .filter(ssa -> !ssa.isBlank())
+                .collectList()
+                .block(Duration.ofMinutes(2));
+    }
+
+    private void drive(Duration duration, LoadTestResult result) {
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+
+        // Emits the time at which each request is due
+        Flux<Long> dueTimes;
+        int concurrency;
+        if (options.rate > 0) {
+            long intervalNanos = (long) (1e9 / options.rate);
+            dueTimes = Flux.interval(Duration.ofNanos(intervalNanos))
+                    .map(i -> start + i * intervalNanos)
+                    .takeWhile(due -> due < end);
+            concurrency = Integer.MAX_VALUE;
+        } else {
+            dueTimes = Flux.generate(sink -> {
+                long now = System.nanoTime();
+                if (now < end) {
+                    sink.next(now);
+                } else {
+                    sink.complete();
+                }
+            });
+            concurrency = options.concurrency;
+        }
+
+        dueTimes.flatMap(due -> validate(due, result), concurrency).blockLast();
+        result.setElapsedNanos(System.nanoTime() - start);
+    }
+
+    private Mono<Integer> validate(long due, LoadTestResult result) {
+        boolean valid = invalidTokens.isEmpty() || ThreadLocalRandom.current().nextDouble() >= options.invalidRatio;
+        List<String> tokens = valid ? validTokens : invalidTokens;
+        String ssa = tokens.get((int) (sequence.getAndIncrement() % tokens.size()));
+
+        return webClient.post()
+                .uri("/validate")
+                .contentType(MediaType.TEXT_PLAIN)
+                .bodyValue(ssa)
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.rawStatusCode()))
+                .doOnNext(status -> result.recordResponse(System.nanoTime() - due,
+                        status == (valid ? 204 : 400), status == 503))
+                .onErrorResume(e -> {
+                    result.recordFailure(System.nanoTime() - due);
+                    return Mono.empty();
+                });
+    }
+
+    private RouterFunction<ServerResponse> jwksRoute() {
+        return RouterFunctions.route(RequestPredicates.GET("/loadtest/jwks"), request -> ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(publishedJwks.get()));
+    }
+
+    private static String getMockIssuerJwks() throws JoseException {
+        return new JsonWebKeySet(JsonWebKey.Factory.newJwk(MockController.issuerJwk))
+                .toJson(JsonWebKey.OutputControlLevel.PUBLIC_ONLY);
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
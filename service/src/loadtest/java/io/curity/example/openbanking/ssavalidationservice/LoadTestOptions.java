@@ -0,0 +1,104 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Options of a load test run, given as {@code key=value} arguments. Options with a dot in their name, such as
+ * {@code jwt.verification_threads=4}, are passed on to the application.
+ */
+final class LoadTestOptions {
+
+    enum Scenario {
+        STEADY,   // valid tokens after a warm-up
+        COLD,     // valid tokens without a warm-up, so the first requests load the JWKS
+        ROTATION, // the issuer publishes a new key halfway through the run and signs with it from then on
+        MIXED     // valid tokens and a share of invalid_ratio of invalid ones
+    }
+
+    Scenario scenario = Scenario.STEADY;
+    int concurrency = 16;
+    double rate;             // requests per second, 0 for closed-loop load at the given concurrency
+    Duration warmup = Duration.ofSeconds(10);
+    Duration duration = Duration.ofSeconds(30);
+    int tokens = 200;        // distinct software statements of each kind, used round-robin
+    double invalidRatio = 0.2;
+    double maxP50Millis = Double.MAX_VALUE;
+    double maxP99Millis = Double.MAX_VALUE;
+    double maxP999Millis = Double.MAX_VALUE;
+    double minThroughput;
+    double maxErrorRatio;
+    String resultFile = "target/loadtest-result.json";
+    final Map<String, Object> applicationProperties = new HashMap<>();
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            if (key.contains(".")) {
+                options.applicationProperties.put(key, value);
+                continue;
+            }
+
+            switch (key) {
+                case "scenario":
+                    options.scenario = Scenario.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "concurrency":
+                    options.concurrency = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    options.rate = Double.parseDouble(value);
+                    break;
+                case "warmup_seconds":
+                    options.warmup = Duration.ofSeconds(Long.parseLong(value));
+                    break;
+                case "duration_seconds":
+                    options.duration = Duration.ofSeconds(Long.parseLong(value));
+                    break;
+                case "tokens":
+                    options.tokens = Integer.parseInt(value);
+                    break;
+                case "invalid_ratio":
+                    options.invalidRatio = Double.parseDouble(value);
+                    break;
+                case "max_p50_ms":
+                    options.maxP50Millis = Double.parseDouble(value);
+                    break;
+                case "max_p99_ms":
+                    options.maxP99Millis = Double.parseDouble(value);
+                    break;
+                case "max_p999_ms":
+                    options.maxP999Millis = Double.parseDouble(value);
+                    break;
+                case "min_throughput":
+                    options.minThroughput = Double.parseDouble(value);
+                    break;
+                case "max_error_ratio":
+                    options.maxErrorRatio = Double.parseDouble(value);
+                    break;
+                case "result_file":
+                    options.resultFile = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + key);
+            }
+        }
+
+        if (options.scenario == Scenario.COLD) {
+            options.warmup = Duration.ZERO;
+        }
+        // The software statements are signed before the run and must not become too old to be accepted
+        if (options.warmup.plus(options.duration).compareTo(Duration.ofMinutes(4)) > 0) {
+            throw new IllegalArgumentException("The warm-up and the run must not take longer than 4 minutes");
+        }
+        return options;
+    }
+}
@@ -0,0 +1,135 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the requests of a load test run, and the check against the budgets.
+ */
+final class LoadTestResult {
+
+    private final Histogram latencyMicros = new ConcurrentHistogram(3);
+    private final LongAdder expected = new LongAdder();
+    private final LongAdder unexpected = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long firstLatencyNanos = -1;
+    private long elapsedNanos;
+
+    void recordResponse(long latencyNanos, boolean asExpected, boolean overloaded) {
+        record(latencyNanos);
+        if (overloaded) {
+            rejected.increment();
+        } else if (asExpected) {
+            expected.increment();
+        } else {
+            unexpected.increment();
+        }
+    }
+
+    // The request did not get a response, e.g. because the connection was refused
+    void recordFailure(long latencyNanos) {
+        record(latencyNanos);
+        failed.increment();
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    private void record(long latencyNanos) {
+        if (firstLatencyNanos < 0) {
+            firstLatencyNanos = latencyNanos;
+        }
+        latencyMicros.recordValue(Math.max(TimeUnit.NANOSECONDS.toMicros(latencyNanos), 1));
+    }
+
+    long getRequests() {
+        return latencyMicros.getTotalCount();
+    }
+
+    long getErrors() {
+        return unexpected.sum() + rejected.sum() + failed.sum();
+    }
+
+    double getErrorRatio() {
+        return getRequests() == 0 ? 0 : (double) getErrors() / getRequests();
+    }
+
+    double getThroughput() {
+        return elapsedNanos == 0 ? 0 : getRequests() / (elapsedNanos / 1e9);
+    }
+
+    double getPercentileMillis(double percentile) {
+        return latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Returns the budgets of the options that the run exceeded, or an empty list if it passed.
+     */
+    List<String> checkBudgets(LoadTestOptions options) {
+        List<String> violations = new ArrayList<>();
+        checkMax(violations, "p50", getPercentileMillis(50), options.maxP50Millis, "ms");
+        checkMax(violations, "p99", getPercentileMillis(99), options.maxP99Millis, "ms");
+        checkMax(violations, "p99.9", getPercentileMillis(99.9), options.maxP999Millis, "ms");
+        checkMax(violations, "error ratio", getErrorRatio(), options.maxErrorRatio, "");
+        if (getThroughput() < options.minThroughput) {
+            violations.add(String.format("throughput %.1f/s is below the budget of %.1f/s", getThroughput(), options.minThroughput));
+        }
+        return violations;
+    }
+
+    private static void checkMax(List<String> violations, String name, double value, double budget, String unit) {
+        if (value > budget) {
+            violations.add(String.format("%s %.3f%s exceeds the budget of %.3f%s", name, value, unit, budget, unit));
+        }
+    }
+
+    void print(LoadTestOptions options, PrintStream out) {
+        out.printf("Scenario:     %s%n", options.scenario.name().toLowerCase());
+        out.printf("Load:         %s%n", options.rate > 0
+                ? String.format("%.1f requests/s", options.rate)
+                : options.concurrency + " concurrent requests");
+        out.printf("Requests:     %d in %.1f s%n", getRequests(), elapsedNanos / 1e9);
+        out.printf("Throughput:   %.1f requests/s%n", getThroughput());
+        out.printf("Latency:      p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                getPercentileMillis(50), getPercentileMillis(99), getPercentileMillis(99.9),
+                latencyMicros.getMaxValue() / 1000.0);
+        out.printf("First:        %.3f ms%n", firstLatencyNanos / 1e6);
+        out.printf("Outcomes:     %d as expected, %d unexpected, %d rejected (503), %d failed%n",
+                expected.sum(), unexpected.sum(), rejected.sum(), failed.sum());
+    }
+
+    void write(LoadTestOptions options, File file) throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scenario", options.scenario.name().toLowerCase());
+        result.put("concurrency", options.rate > 0 ? null : options.concurrency);
+        result.put("rate", options.rate > 0 ? options.rate : null);
+        result.put("requests", getRequests());
+        result.put("seconds", elapsedNanos / 1e9);
+        result.put("throughput", getThroughput());
+        result.put("p50_ms", getPercentileMillis(50));
+        result.put("p99_ms", getPercentileMillis(99));
+        result.put("p999_ms", getPercentileMillis(99.9));
+        result.put("max_ms", latencyMicros.getMaxValue() / 1000.0);
+        result.put("first_ms", firstLatencyNanos / 1e6);
+        result.put("expected", expected.sum());
+        result.put("unexpected", unexpected.sum());
+        result.put("rejected", rejected.sum());
+        result.put("failed", failed.sum());
+
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, result);
+    }
+}
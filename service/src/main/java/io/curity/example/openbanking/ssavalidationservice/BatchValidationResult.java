@@ -0,0 +1,70 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.jose4j.jwt.consumer.ErrorCodeValidator;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Result for a single software statement of a batch, written as one line of NDJSON.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchValidationResult {
+
+    private final long index;
+    private final boolean valid;
+    private final Boolean rejected;
+    private final String reason;
+
+    private BatchValidationResult(long index, boolean valid, Boolean rejected, String reason) {
+        this.index = index;
+        this.valid = valid;
+        this.rejected = rejected;
+        this.reason = reason;
+    }
+
+    static BatchValidationResult valid(long index) {
+        return new BatchValidationResult(index, true, null, null);
+    }
+
+    static BatchValidationResult invalid(long index, Throwable error) {
+        return new BatchValidationResult(index, false, null, getReason(error));
+    }
+
+    // The token was not verified because the service is overloaded, for example because the verification queue or the
+    // replay detection store is full, and can be submitted again later
+    static BatchValidationResult rejected(long index, RejectedExecutionException error) {
+        return new BatchValidationResult(index, false, true,
+                error.getMessage() != null ? error.getMessage() : "Service overloaded");
+    }
+
+    // Zero-based line number of the token in the request body
+    public long getIndex() {
+        return index;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    // Only present on tokens that were rejected
+    public Boolean getRejected() {
+        return rejected;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    // The message of an InvalidJwtException includes the claims of the token, so only the error details are used
+    private static String getReason(Throwable error) {
+        if (error instanceof InvalidJwtException && !((InvalidJwtException) error).getErrorDetails().isEmpty()) {
+            return ((InvalidJwtException) error).getErrorDetails().stream()
+                    .map(ErrorCodeValidator.Error::getErrorMessage)
+                    .collect(Collectors.joining(" "));
+        }
+        return error.getMessage();
+    }
+}
@@ -0,0 +1,41 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Serves the client key sets that were prefetched after validating software statements, see {@link ClientJwksCache}.
+ * Only answers from the cache and never fetches a key set itself.
+ */
+@Controller
+public class ClientJwksController {
+
+    private final ClientJwksCache clientJwksCache;
+
+    public ClientJwksController(ClientJwksCache clientJwksCache) {
+        this.clientJwksCache = clientJwksCache;
+    }
+
+    // The key set published at the software_jwks_uri of a client, for as long as it is cached. The response may be
+    // cached until the entry expires.
+    @GetMapping(value = "/clients/jwks", produces = "application/jwk-set+json")
+    public ResponseEntity<Mono<String>> getClientJsonWebKeySet(@RequestParam("jwks_uri") String jwksUri) {
+        ClientJwksCache.ClientJwks clientJwks = clientJwksCache.get(jwksUri);
+        if (clientJwks == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Duration remaining = Duration.between(Instant.now(), clientJwks.getExpiresAt());
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(remaining.isNegative() ? Duration.ZERO : remaining))
+                .lastModified(clientJwks.getFetchedAt())
+                .body(Mono.just(clientJwks.getJwks()));
+    }
+}
@@ -0,0 +1,160 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwt.consumer.ErrorCodeValidator;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * Reads a JWS in compact serialization from a request body, checking its format while the body is still arriving.
+ *
+ * Every byte is checked as soon as its buffer is received: the token must consist of three non-empty segments of
+ * base64url characters (without padding), optionally followed by whitespace. A body that is larger than the maximum
+ * size, or a header segment that is larger than the maximum header size, is rejected without reading further. Only a
+ * body that passes is joined into one buffer, which is not copied if it arrived in one piece, and decoded to a
+ * {@link String} once. A token that has already been decoded, such as a line of a batch, is checked in the same way.
+ *
+ * A reader keeps the state of one body and must not be reused.
+ */
+public class CompactJwsReader {
+
+    public static final int DEFAULT_MAX_BYTES = 16384;
+    public static final int DEFAULT_MAX_HEADER_BYTES = 2048;
+
+    private static final boolean[] base64UrlCharacters = new boolean[128];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            base64UrlCharacters[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            base64UrlCharacters[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            base64UrlCharacters[c] = true;
+        }
+        base64UrlCharacters['-'] = true;
+        base64UrlCharacters['_'] = true;
+    }
+
+    private final int maxBytes;
+    private final int maxHeaderBytes;
+
+    private int length;
+    private int tokenLength;
+    private int segment;
+    private int segmentLength;
+    private boolean trailingWhitespace;
+
+    public CompactJwsReader(int maxBytes, int maxHeaderBytes) {
+        this.maxBytes = maxBytes;
+        this.maxHeaderBytes = maxHeaderBytes;
+    }
+
+    /**
+     * Emits the token, or fails with an {@link InvalidJwtException} if the body is not a compact JWS or with a
+     * {@link DataBufferLimitException} if it is too large.
+     */
+    public Mono<String> read(Flux<DataBuffer> body) {
+        Flux<DataBuffer> checkedBody = body.handle((buffer, sink) -> {
+            try {
+                scan(buffer);
+                sink.next(buffer);
+            } catch (InvalidJwtException | DataBufferLimitException e) {
+                DataBufferUtils.release(buffer);
+                sink.error(e);
+            }
+        });
+
+        return DataBufferUtils.join(checkedBody)
+                .<String>handle((joined, sink) -> {
+                    try {
+                        finish();
+                        sink.next(joined.toString(joined.readPosition(), tokenLength, StandardCharsets.US_ASCII));
+                    } catch (InvalidJwtException e) {
+                        sink.error(e);
+                    } finally {
+                        DataBufferUtils.release(joined);
+                    }
+                })
+                .switchIfEmpty(Mono.error(() -> malformed("The body is empty")));
+    }
+
+    /**
+     * Checks a token that has already been decoded, such as a line of a batch, in the same way as a body, and returns
+     * it without trailing whitespace.
+     */
+    public String read(String token) throws InvalidJwtException {
+        if (token.length() > maxBytes) {
+            throw new DataBufferLimitException("The software statement exceeds the limit of " + maxBytes + " bytes");
+        }
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            // Any character beyond ASCII is outside the base64url alphabet
+            scan(c < 128 ? (byte) c : -1);
+        }
+        finish();
+        return token.substring(0, tokenLength);
+    }
+
+    void scan(DataBuffer buffer) throws InvalidJwtException {
+        int end = buffer.writePosition();
+        if (length + buffer.readableByteCount() > maxBytes) {
+            throw new DataBufferLimitException("The software statement exceeds the limit of " + maxBytes + " bytes");
+        }
+
+        for (int i = buffer.readPosition(); i < end; i++) {
+            scan(buffer.getByte(i));
+        }
+    }
+
+    private void scan(byte b) throws InvalidJwtException {
+        length++;
+        if (isWhitespace(b)) {
+            trailingWhitespace = true;
+            return;
+        }
+        if (trailingWhitespace) {
+            throw malformed("Unexpected data after whitespace");
+        }
+
+        tokenLength++;
+        if (b == '.') {
+            if (segmentLength == 0) {
+                throw malformed("Empty segment");
+            }
+            if (++segment > 2) {
+                throw malformed("More than three segments");
+            }
+            segmentLength = 0;
+        } else if (b >= 0 && base64UrlCharacters[b]) {
+            segmentLength++;
+            if (segment == 0 && segmentLength > maxHeaderBytes) {
+                throw malformed("The header exceeds the limit of " + maxHeaderBytes + " bytes");
+            }
+        } else {
+            throw malformed("Character outside the base64url alphabet at offset " + (length - 1));
+        }
+    }
+
+    void finish() throws InvalidJwtException {
+        if (segment != 2 || segmentLength == 0) {
+            throw malformed("A compact JWS must have three non-empty segments");
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static InvalidJwtException malformed(String message) {
+        return new InvalidJwtException("Invalid JWS compact serialization: " + message,
+                Collections.singletonList(new ErrorCodeValidator.Error(SsaValidator.MALFORMED, message)), null);
+    }
+}
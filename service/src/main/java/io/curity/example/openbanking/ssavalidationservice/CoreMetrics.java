@@ -0,0 +1,89 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer instrumentation of the state of the core, which does not depend on Micrometer itself:
+ * <ul>
+ *     <li>{@code ssa.jwks.refresh} timer per issuer (tags {@code issuer} and {@code outcome})</li>
+ *     <li>{@code ssa.jwks.age} gauge with the time since the cached JWKS of an issuer was fetched (tag {@code issuer})</li>
+ *     <li>{@code ssa.replay.store_full} counter of tokens that found both their buckets of the replay detection store
+ *     full (tag {@code policy})</li>
+ *     <li>{@code ssa.client_jwks.prefetch} counter of client key set prefetches (tag {@code outcome}),
+ *     {@code ssa.client_jwks.size} gauge of the key sets in the prefetch cache, and
+ *     {@code ssa.client_jwks.failed_uris} gauge of the remembered URIs that could not be fetched</li>
+ * </ul>
+ */
+public class CoreMetrics implements MeterBinder {
+
+    private final IssuerRegistry issuerRegistry;
+    private final ReplayDetector replayDetector;
+    private final ClientJwksCache clientJwksCache;
+
+    public CoreMetrics(IssuerRegistry issuerRegistry, ReplayDetector replayDetector, ClientJwksCache clientJwksCache) {
+        this.issuerRegistry = issuerRegistry;
+        this.replayDetector = replayDetector;
+        this.clientJwksCache = clientJwksCache;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (TrustedIssuer issuer : issuerRegistry.getIssuers()) {
+            JwksCache jwksCache = issuer.getJwksCache();
+            Timer successTimer = refreshTimer(registry, issuer, "success");
+            Timer failureTimer = refreshTimer(registry, issuer, "failure");
+            jwksCache.addRefreshListener((success, durationNanos) ->
+                    (success ? successTimer : failureTimer).record(durationNanos, TimeUnit.NANOSECONDS));
+
+            Gauge.builder("ssa.jwks.age", jwksCache, CoreMetrics::getKeySetAgeSeconds)
+                    .description("Time since the cached JWKS was fetched")
+                    .tag("issuer", issuer.getName())
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+
+        // The store is full at least once per token that was rejected or caused an eviction
+        FunctionCounter.builder("ssa.replay.store_full", replayDetector, ReplayDetector::getStoreFullCount)
+                .description("Tokens that found both their buckets of the replay detection store full")
+                .tag("policy", replayDetector.getFullPolicy().name().toLowerCase())
+                .register(registry);
+
+        Gauge.builder("ssa.client_jwks.size", clientJwksCache, ClientJwksCache::size)
+                .description("Client key sets in the prefetch cache")
+                .register(registry);
+        Gauge.builder("ssa.client_jwks.failed_uris", clientJwksCache, ClientJwksCache::getFailedUriCount)
+                .description("Remembered URIs of client key sets that could not be fetched")
+                .register(registry);
+        prefetchCounter(registry, "success", ClientJwksCache::getFetchedCount);
+        prefetchCounter(registry, "failure", ClientJwksCache::getFailedCount);
+        prefetchCounter(registry, "dropped", ClientJwksCache::getDroppedCount);
+    }
+
+    private void prefetchCounter(MeterRegistry registry, String outcome, ToDoubleFunction<ClientJwksCache> count) {
+        FunctionCounter.builder("ssa.client_jwks.prefetch", clientJwksCache, count)
+                .description("Prefetches of client key sets by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static Timer refreshTimer(MeterRegistry registry, TrustedIssuer issuer, String outcome) {
+        return Timer.builder("ssa.jwks.refresh")
+                .description("Time to fetch the JWKS of the issuer")
+                .tag("issuer", issuer.getName())
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static double getKeySetAgeSeconds(JwksCache jwksCache) {
+        Duration age = jwksCache.getKeySetAge();
+        return age == null ? Double.NaN : age.toMillis() / 1000.0;
+    }
+}
@@ -0,0 +1,109 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the service out of rotation until the key sets of all configured issuers have been loaded.
+ *
+ * Before the service accepts traffic, the key sets of all issuers are loaded concurrently, and the application runner
+ * waits for them until one overall deadline. A load that fails is logged and tried again in the background once the
+ * minimum refresh interval of the cache has passed, until it succeeds. The indicator, which is part of the readiness
+ * group, only reads the caches, and reports {@code DOWN} while an issuer has no key set. It does not depend on the
+ * warm-up, which runs after it.
+ *
+ * Without the preload, for example to measure a cold start, the key sets are loaded by the first requests and the
+ * indicator is always {@code UP}.
+ */
+public class IssuerKeysHealthIndicator implements HealthIndicator, ApplicationRunner, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(IssuerKeysHealthIndicator.class);
+
+    private static final Duration minRetryDelay = Duration.ofSeconds(1);
+
+    private final IssuerRegistry issuerRegistry;
+    private final Duration loadTimeout;
+    private final boolean preload;
+
+    public IssuerKeysHealthIndicator(IssuerRegistry issuerRegistry, Duration loadTimeout, boolean preload) {
+        this.issuerRegistry = issuerRegistry;
+        this.loadTimeout = loadTimeout;
+        this.preload = preload;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!preload) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<?>[] loads = issuerRegistry.getIssuers().stream()
+                .map(this::load)
+                .toArray(CompletableFuture[]::new);
+
+        try {
+            CompletableFuture.allOf(loads).get(loadTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            logger.info("Loaded the JWKS of {} issuers in {} ms", loads.length,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Failed loads have been logged and are retried, the readiness group waits for them
+            logger.warn("The JWKS of {} could not be loaded within {} s, the service is not ready until they are",
+                    getIssuersWithoutKeys(), loadTimeout.toSeconds());
+        }
+    }
+
+    @Override
+    public Health health() {
+        if (!preload) {
+            return Health.up().build();
+        }
+
+        List<String> issuersWithoutKeys = getIssuersWithoutKeys();
+        if (issuersWithoutKeys.isEmpty()) {
+            return Health.up().build();
+        }
+        return Health.down().withDetail("issuersWithoutKeys", issuersWithoutKeys).build();
+    }
+
+    // Runs before the warm-up and any other application runner
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    // Nothing else loads the keys while the service is not ready and gets no requests, so failed loads are retried
+    // here, no sooner than the cache would start another fetch
+    private CompletableFuture<VerificationKeys> load(TrustedIssuer issuer) {
+        JwksCache jwksCache = issuer.getJwksCache();
+        return jwksCache.getVerificationKeys().whenComplete((keys, error) -> {
+            if (error != null) {
+                logger.warn("Unable to load the JWKS of {}", issuer.getName(), error);
+                long retryDelay = Math.max(jwksCache.getMinRefreshInterval().toMillis(), minRetryDelay.toMillis());
+                CompletableFuture.delayedExecutor(retryDelay, TimeUnit.MILLISECONDS).execute(() -> load(issuer));
+            }
+        });
+    }
+
+    private List<String> getIssuersWithoutKeys() {
+        return issuerRegistry.getIssuers().stream()
+                .filter(issuer -> issuer.getJwksCache().getKeySetAge() == null)
+                .map(TrustedIssuer::getName)
+                .collect(Collectors.toList());
+    }
+}
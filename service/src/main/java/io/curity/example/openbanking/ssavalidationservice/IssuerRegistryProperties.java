@@ -0,0 +1,24 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Issuers configured as {@code jwt.issuers[n].*}. If none are configured, the single issuer given by
+ * {@code jwt.issuer} and {@code jwt.issuer.jwks_uri} is used.
+ */
+@ConfigurationProperties(prefix = "jwt")
+public class IssuerRegistryProperties {
+
+    private List<IssuerConfiguration> issuers = new ArrayList<>();
+
+    public List<IssuerConfiguration> getIssuers() {
+        return issuers;
+    }
+
+    public void setIssuers(List<IssuerConfiguration> issuers) {
+        this.issuers = issuers;
+    }
+}
@@ -0,0 +1,111 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.lang.JoseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+@Controller
+public class SsaValidationController {
+
+    private final SsaValidationPipeline ssaValidationPipeline;
+    private final VerificationScheduler verificationScheduler;
+    private final ValidationMetrics validationMetrics;
+
+    @Value("${jwt.verification_retry_after_seconds:1}")
+    private int retryAfterSeconds;
+
+    @Value("${jwt.max_ssa_bytes:" + CompactJwsReader.DEFAULT_MAX_BYTES + "}")
+    private int maxSsaBytes = CompactJwsReader.DEFAULT_MAX_BYTES;
+
+    @Value("${jwt.max_ssa_header_bytes:" + CompactJwsReader.DEFAULT_MAX_HEADER_BYTES + "}")
+    private int maxSsaHeaderBytes = CompactJwsReader.DEFAULT_MAX_HEADER_BYTES;
+
+    @Value("${jwt.batch_concurrency:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int batchConcurrency;
+
+    public SsaValidationController(SsaValidationPipeline ssaValidationPipeline,
+                                   VerificationScheduler verificationScheduler, ValidationMetrics validationMetrics) {
+        this.ssaValidationPipeline = ssaValidationPipeline;
+        this.verificationScheduler = verificationScheduler;
+        this.validationMetrics = validationMetrics;
+    }
+
+    @PostMapping(value = "/validate", consumes = MediaType.TEXT_PLAIN_VALUE)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> validate(@RequestBody Flux<DataBuffer> body) {
+        // Bodies that are too large or not a compact JWS are rejected while they are read
+        return new CompactJwsReader(maxSsaBytes, maxSsaHeaderBytes).read(body)
+                .doOnError(validationMetrics::recordFailure)
+                .flatMap(ssaStr -> validateSsa(ssaStr, verificationScheduler.getExecutor()));
+    }
+
+    // Validates a stream of newline-delimited software statements and streams back one result per token as soon as
+    // it is available. Every line is checked like the body of a single token, and tokens are verified in parallel on
+    // the verification scheduler, with at most batchConcurrency of them in progress at a time. A token that finds the
+    // queue of the scheduler full gets a rejected result, and the rest of the batch goes on.
+    @PostMapping(value = "/validate/batch",
+            consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseBody
+    public Flux<BatchValidationResult> validateBatch(@RequestBody Flux<String> ssaStrs) {
+        return ssaStrs
+                .index()
+                .filter(indexed -> !indexed.getT2().isBlank())
+                .flatMap(indexed -> validateBatchEntry(indexed.getT1(), indexed.getT2().trim()), batchConcurrency);
+    }
+
+    private Mono<BatchValidationResult> validateBatchEntry(long index, String line) {
+        return Mono.fromCallable(() -> new CompactJwsReader(maxSsaBytes, maxSsaHeaderBytes).read(line))
+                .doOnError(validationMetrics::recordFailure)
+                .flatMap(ssaStr -> validateSsa(ssaStr, verificationScheduler.getExecutor()))
+                .then(Mono.fromSupplier(() -> BatchValidationResult.valid(index)))
+                .onErrorResume(RejectedExecutionException.class, e -> Mono.just(BatchValidationResult.rejected(index, e)))
+                .onErrorResume(e -> Mono.just(BatchValidationResult.invalid(index, e)));
+    }
+
+    // The validation itself is done by the core, which completes the future on the executor that verified the
+    // signature
+    private Mono<Void> validateSsa(String ssaStr, Executor executor) {
+        return Mono.fromFuture(() -> ssaValidationPipeline.validateAsync(ssaStr, executor));
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidJwtException.class)
+    public void invalidJwtExceptionHandler() {
+    }
+
+    @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+    @ExceptionHandler(JoseException.class)
+    public void internalErrorExceptionHandler() {
+
+    }
+
+    @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+    @ExceptionHandler(DataBufferLimitException.class)
+    public void payloadTooLargeExceptionHandler() {
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Void> overloadedExceptionHandler() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .build();
+    }
+}
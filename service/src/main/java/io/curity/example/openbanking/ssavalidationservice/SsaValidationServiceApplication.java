@@ -0,0 +1,201 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.lang.HashUtil;
+import org.jose4j.lang.StringUtil;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import java.math.BigInteger;
+import java.net.http.HttpClient;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootApplication
+@EnableConfigurationProperties(IssuerRegistryProperties.class)
+public class SsaValidationServiceApplication {
+
+    private static final int maxAgeSeconds = 5*60; // JWT must not be older than 5 minutes
+
+    // The single issuer that is trusted when no jwt.issuers are configured
+    @Value("${jwt.issuer:Regulatory Body}")
+    private String issuerName;
+
+    @Value("${jwt.issuer.jwks_uri:http://localhost:8080/jwks}")
+    private String jwksUri;
+
+    @Value("${jwt.issuer.jwks_cache_seconds:3600}")
+    private long jwksCacheSeconds;
+
+    @Value("${jwt.issuer.jwks_min_refresh_seconds:30}")
+    private long jwksMinRefreshSeconds;
+
+    // Directory for the last good JWKS of each issuer, empty to keep the key sets in memory only
+    @Value("${jwt.jwks_snapshot_dir:}")
+    private String jwksSnapshotDir;
+
+    @Value("${jwt.jwks_snapshot_max_age_seconds:86400}")
+    private long jwksSnapshotMaxAgeSeconds;
+
+    // Time to wait for the key sets of all issuers at startup, see IssuerKeysHealthIndicator
+    @Value("${jwt.jwks_load_timeout_seconds:30}")
+    private long jwksLoadTimeoutSeconds;
+
+    @Value("${jwt.jwks_preload:true}")
+    private boolean jwksPreload;
+
+    @Value("${jwt.verification_threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int verificationThreads;
+
+    @Value("${jwt.verification_queue_size:256}")
+    private int verificationQueueSize;
+
+    @Value("${jwt.verified_ssa_cache_size:0}")
+    private int verifiedSsaCacheSize;
+
+    // Number of tokens remembered for replay detection, 0 to accept a token more than once
+    @Value("${jwt.replay_detection_capacity:0}")
+    private int replayDetectionCapacity;
+
+    @Value("${jwt.replay_detection_full_policy:reject}")
+    private String replayDetectionFullPolicy;
+
+    @Value("${jwt.replay_detection_off_heap:false}")
+    private boolean replayDetectionOffHeap;
+
+    // Number of client key sets prefetched from the software_jwks_uri of valid tokens, 0 to not prefetch them
+    @Value("${jwt.client_jwks_prefetch_size:0}")
+    private int clientJwksPrefetchSize;
+
+    @Value("${jwt.client_jwks_prefetch_ttl_seconds:300}")
+    private long clientJwksPrefetchTtlSeconds;
+
+    @Value("${jwt.client_jwks_prefetch_concurrency:4}")
+    private int clientJwksPrefetchConcurrency;
+
+    // Client key sets are downloaded from URIs chosen by the TPP, larger ones are not fetched
+    @Value("${jwt.client_jwks_max_bytes:65536}")
+    private int clientJwksMaxBytes;
+
+    // Validation of synthetic tokens before the service becomes ready, see ValidationWarmup
+    @Value("${jwt.warmup_iterations:0}")
+    private int warmupIterations;
+
+    @Value("${jwt.warmup_seconds:0}")
+    private long warmupSeconds;
+
+    @Value("${jwt.warmup_exit:false}")
+    private boolean warmupExit;
+
+    public static void main(String[] args) {
+        SpringApplication.run(SsaValidationServiceApplication.class, args);
+    }
+
+    @Bean
+    public IssuerRegistry getIssuerRegistry(IssuerRegistryProperties properties) {
+        List<IssuerConfiguration> configuredIssuers = properties.getIssuers();
+        if (configuredIssuers.isEmpty()) {
+            IssuerConfiguration issuer = new IssuerConfiguration();
+            issuer.setName(issuerName);
+            issuer.setJwksUri(jwksUri);
+            issuer.setMaxAgeSeconds(maxAgeSeconds);
+            issuer.setAllowedAlgorithms(List.of(AlgorithmIdentifiers.RSA_PSS_USING_SHA256)); // only PS256 is allowed here
+            issuer.setJwksCacheSeconds(jwksCacheSeconds);
+            issuer.setJwksMinRefreshSeconds(jwksMinRefreshSeconds);
+            configuredIssuers = List.of(issuer);
+        }
+
+        // All issuers share the connection pool of one client
+        HttpClient httpClient = HttpClient.newHttpClient();
+        List<TrustedIssuer> issuers = new ArrayList<>();
+        for (IssuerConfiguration configuration : configuredIssuers) {
+            TrustedIssuer issuer = new TrustedIssuer(configuration, httpClient);
+            if (!jwksSnapshotDir.isEmpty()) {
+                // Loaded while the context starts, so the service is not ready before the keys are in place
+                issuer.getJwksCache().loadSnapshot(Paths.get(jwksSnapshotDir, getSnapshotFileName(issuer.getName())),
+                        Duration.ofSeconds(jwksSnapshotMaxAgeSeconds));
+            }
+            issuers.add(issuer);
+        }
+        return new IssuerRegistry(issuers);
+    }
+
+    // Named after a hash, since issuer names that differ only in characters unfit for a file name must not collide
+    private static String getSnapshotFileName(String issuerName) {
+        byte[] digest = HashUtil.getMessageDigest(HashUtil.SHA_256).digest(StringUtil.getBytesUtf8(issuerName));
+        return String.format("%064x", new BigInteger(1, digest)) + ".jwks.json";
+    }
+
+    @Bean
+    public VerifiedSsaCache getVerifiedSsaCache() {
+        return new VerifiedSsaCache(verifiedSsaCacheSize);
+    }
+
+    @Bean
+    public ReplayDetector getReplayDetector() {
+        return new ReplayDetector(replayDetectionCapacity,
+                ReplayDetector.FullPolicy.valueOf(replayDetectionFullPolicy.toUpperCase()), replayDetectionOffHeap);
+    }
+
+    @Bean
+    public VerificationScheduler getVerificationScheduler() {
+        return new VerificationScheduler(verificationThreads, verificationQueueSize);
+    }
+
+    @Bean
+    public ValidationMetrics getValidationMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        // Metrics are only recorded locally if no registry has been configured, e.g. in tests of the controllers
+        return new ValidationMetrics(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    @Bean
+    public ClientJwksCache getClientJwksCache() {
+        // Client key sets are fetched with a client of their own, so that they do not share connections with the
+        // issuers
+        return new ClientJwksCache(HttpClient.newHttpClient(), clientJwksPrefetchSize,
+                Duration.ofSeconds(clientJwksPrefetchTtlSeconds), clientJwksPrefetchConcurrency, clientJwksMaxBytes);
+    }
+
+    @Bean
+    public SsaValidationPipeline getSsaValidationPipeline(IssuerRegistry issuerRegistry, VerifiedSsaCache verifiedSsaCache,
+                                                          ReplayDetector replayDetector,
+                                                          VerificationScheduler verificationScheduler,
+                                                          ValidationMetrics validationMetrics,
+                                                          ClientJwksCache clientJwksCache) {
+        return new SsaValidationPipeline(issuerRegistry, verifiedSsaCache, replayDetector,
+                verificationScheduler.getExecutor(), validationMetrics, clientJwksCache);
+    }
+
+    @Bean
+    public CoreMetrics getCoreMetrics(IssuerRegistry issuerRegistry, ReplayDetector replayDetector,
+                                      ClientJwksCache clientJwksCache) {
+        return new CoreMetrics(issuerRegistry, replayDetector, clientJwksCache);
+    }
+
+    // Named for the issuerKeys contributor of the readiness health group
+    @Bean(name = "issuerKeysHealthIndicator")
+    public IssuerKeysHealthIndicator getIssuerKeysHealthIndicator(IssuerRegistry issuerRegistry) {
+        return new IssuerKeysHealthIndicator(issuerRegistry, Duration.ofSeconds(jwksLoadTimeoutSeconds),
+                jwksPreload);
+    }
+
+    @Bean
+    public ValidationWarmup getValidationWarmup(VerificationScheduler verificationScheduler,
+                                                ObjectProvider<MeterRegistry> meterRegistry, ApplicationContext context) {
+        ValidationWarmup validationWarmup = new ValidationWarmup(verificationScheduler,
+                meterRegistry.getIfAvailable(SimpleMeterRegistry::new), warmupIterations, Duration.ofSeconds(warmupSeconds));
+        if (warmupExit) {
+            validationWarmup.setExitAfterWarmup(context);
+        }
+        return validationWarmup;
+    }
+}
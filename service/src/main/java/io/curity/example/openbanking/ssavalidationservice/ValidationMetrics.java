@@ -0,0 +1,97 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jose4j.jwt.consumer.ErrorCodeValidator;
+import org.jose4j.jwt.consumer.ErrorCodes;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer instrumentation of the validation path, fed by the {@link SsaValidationPipeline} of the core:
+ * <ul>
+ *     <li>{@code ssa.validation.stage} timer with a histogram per stage (tag {@code stage})</li>
+ *     <li>{@code ssa.validation.outcome} counter (tags {@code outcome} and {@code reason})</li>
+ * </ul>
+ */
+public class ValidationMetrics implements ValidationListener {
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+
+    public ValidationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("ssa.validation.stage")
+                    .description("Time spent in each stage of the validation of a software statement")
+                    .tag("stage", stage.getTag())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    @Override
+    public void recordStage(Stage stage, long durationNanos) {
+        stageTimers.get(stage).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordValid(boolean cached) {
+        outcome("valid", cached ? "cached" : "none").increment();
+    }
+
+    @Override
+    public void recordFailure(Throwable error) {
+        if (error instanceof InvalidJwtException) {
+            outcome("invalid", getReason((InvalidJwtException) error)).increment();
+        } else if (error instanceof DataBufferLimitException) {
+            outcome("invalid", "too_large").increment();
+        } else if (error instanceof RejectedExecutionException) {
+            outcome("rejected", "overloaded").increment();
+        } else {
+            outcome("error", error.getClass().getSimpleName()).increment();
+        }
+    }
+
+    private Counter outcome(String outcome, String reason) {
+        return Counter.builder("ssa.validation.outcome")
+                .description("Number of validated software statements by outcome")
+                .tag("outcome", outcome)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    static String getReason(InvalidJwtException error) {
+        for (ErrorCodeValidator.Error detail : error.getErrorDetails()) {
+            switch (detail.getErrorCode()) {
+                case SsaValidator.MALFORMED:
+                case ErrorCodes.JSON_INVALID:
+                    return "malformed";
+                case SsaValidator.ALGORITHM_NOT_PERMITTED:
+                    return "disallowed_alg";
+                case SsaValidator.KEY_NOT_FOUND:
+                    return "unknown_kid";
+                case ErrorCodes.SIGNATURE_INVALID:
+                    return "bad_signature";
+                case ErrorCodes.ISSUER_INVALID:
+                case ErrorCodes.ISSUER_MISSING:
+                    return "wrong_issuer";
+                case ErrorCodes.ISSUED_AT_INVALID_PAST:
+                    return "too_old";
+                case ErrorCodes.ISSUED_AT_INVALID_FUTURE:
+                    return "issued_in_future";
+                case SsaValidator.REPLAYED:
+                    return "replayed";
+                default:
+                    break;
+            }
+        }
+        return "invalid_claims";
+    }
+}
@@ -0,0 +1,176 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.RsaJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.lang.JoseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runs the validation pipeline on synthetic software statements before the service accepts traffic, so that the
+ * signature verification, JSON parsing and jose4j code paths have been compiled by the JIT when the first real
+ * requests arrive. The tokens are signed with a throwaway key of a synthetic issuer and cover the valid path and each
+ * rejection path. The keys of the configured issuers are loaded before, by {@link IssuerKeysHealthIndicator}.
+ *
+ * Application runners are called before the application is ready, so the readiness state stays
+ * {@code REFUSING_TRAFFIC} until the warm-up has finished. The time it took is published as {@code ssa.warmup}.
+ */
+public class ValidationWarmup implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ValidationWarmup.class);
+
+    private static final String issuerName = "Warm-up Issuer";
+    private static final String keyId = "warmup-key";
+
+    private final VerificationScheduler verificationScheduler;
+    private final MeterRegistry meterRegistry;
+    private final int iterations;
+    private final Duration duration;
+    private ApplicationContext exitContext;
+
+    /**
+     * @param iterations number of times to validate each synthetic token, 0 for no limit
+     * @param duration maximum time to spend validating synthetic tokens, 0 for no limit
+     */
+    public ValidationWarmup(VerificationScheduler verificationScheduler, MeterRegistry meterRegistry, int iterations,
+                            Duration duration) {
+        this.verificationScheduler = verificationScheduler;
+        this.meterRegistry = meterRegistry;
+        this.iterations = iterations;
+        this.duration = duration;
+    }
+
+    public boolean isEnabled() {
+        return iterations > 0 || !duration.isZero();
+    }
+
+    /**
+     * Stops the application once the warm-up has finished, for training runs that record a CDS archive at exit.
+     */
+    public void setExitAfterWarmup(ApplicationContext context) {
+        this.exitContext = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws JoseException {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int completed = validateSyntheticTokens();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Timer.builder("ssa.warmup")
+                .description("Time spent warming up before accepting traffic")
+                .register(meterRegistry)
+                .record(elapsed);
+        logger.info("Warm-up with {} iterations finished in {} ms", completed, elapsed.toMillis());
+
+        if (exitContext != null) {
+            System.exit(SpringApplication.exit(exitContext));
+        }
+    }
+
+    private int validateSyntheticTokens() throws JoseException {
+        RsaJsonWebKey key = RsaJwkGenerator.generateJwk(2048);
+        key.setKeyId(keyId);
+        RsaJsonWebKey otherKey = RsaJwkGenerator.generateJwk(2048);
+        otherKey.setKeyId("unknown-key");
+
+        // The synthetic issuer has its own pipeline, so that neither its keys nor its outcomes reach the real ones.
+        // Its key set is refreshed for every unknown kid, so that the refresh path is warmed up as well.
+        String jwks = new JsonWebKeySet(key).toJson(JsonWebKey.OutputControlLevel.PUBLIC_ONLY);
+        JwksCache jwksCache = new JwksCache(JwksFetcher.of(jwks), Duration.ofDays(1), Duration.ZERO);
+        SsaValidator validator = new SsaValidator(issuerName, 24*60*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        ValidationMetrics validationMetrics = new ValidationMetrics(new SimpleMeterRegistry());
+        SsaValidationPipeline pipeline = new SsaValidationPipeline(
+                new IssuerRegistry(List.of(new TrustedIssuer(issuerName, validator, jwksCache))),
+                new VerifiedSsaCache(0), new ReplayDetector(0), verificationScheduler.getExecutor(), validationMetrics);
+        SsaValidationController controller = new SsaValidationController(pipeline, verificationScheduler, validationMetrics);
+
+        List<String> ssas = createSoftwareStatements(key, otherKey);
+        long deadline = duration.isZero() ? Long.MAX_VALUE : System.nanoTime() + duration.toNanos();
+        int maxIterations = iterations > 0 ? iterations : Integer.MAX_VALUE;
+        int completed = 0;
+        while (completed < maxIterations && System.nanoTime() < deadline) {
+            for (String ssa : ssas) {
+                try {
+                    byte[] body = ssa.getBytes(StandardCharsets.US_ASCII);
+                    controller.validate(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body))).block();
+                } catch (RuntimeException e) {
+                    // Expected for all but the valid token
+                }
+            }
+            completed++;
+        }
+        return completed;
+    }
+
+    // The valid token, followed by one token for each reason to reject a token
+    private static List<String> createSoftwareStatements(RsaJsonWebKey key, RsaJsonWebKey otherKey) throws JoseException {
+        String alg = AlgorithmIdentifiers.RSA_PSS_USING_SHA256;
+        NumericDate now = NumericDate.now();
+        NumericDate tooOld = NumericDate.now();
+        tooOld.addSeconds(-2*24*60*60);
+        NumericDate future = NumericDate.now();
+        future.addSeconds(60*60);
+
+        String valid = createSoftwareStatement(key.getPrivateKey(), keyId, alg, issuerName, now);
+        List<String> ssas = new ArrayList<>();
+        ssas.add(valid);
+        ssas.add(createSoftwareStatement(key.getPrivateKey(), keyId, alg, "Some other authority", now));
+        ssas.add(createSoftwareStatement(key.getPrivateKey(), keyId, alg, issuerName, tooOld));
+        ssas.add(createSoftwareStatement(key.getPrivateKey(), keyId, alg, issuerName, future));
+        ssas.add(createSoftwareStatement(key.getPrivateKey(), keyId, AlgorithmIdentifiers.RSA_USING_SHA256, issuerName, now));
+        ssas.add(createSoftwareStatement(otherKey.getPrivateKey(), otherKey.getKeyId(), alg, issuerName, now));
+        ssas.add(createSoftwareStatement(otherKey.getPrivateKey(), keyId, alg, issuerName, now));
+        ssas.add(valid.substring(0, valid.lastIndexOf('.')));
+        return ssas;
+    }
+
+    private static String createSoftwareStatement(Key signingKey, String kid, String alg, String issuer, NumericDate iat)
+            throws JoseException {
+        UUID softwareId = UUID.randomUUID();
+        UUID orgId = UUID.randomUUID();
+
+        JwtClaims claims = new JwtClaims();
+        claims.setIssuer(issuer);
+        claims.setIssuedAt(iat);
+        claims.setStringClaim("software_id", softwareId.toString());
+        claims.setStringClaim("software_client_name", "Warm-up Client");
+        claims.setStringListClaim("software_redirect_uris", "https://tpp.example.com/callback");
+        claims.setStringClaim("software_jwks_uri", String.format("https://keystore.example.com/%s/%s/application.jwks", orgId, softwareId));
+        claims.setStringListClaim("software_roles", "Role1", "Role2");
+        claims.setClaim("org_id", orgId);
+
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setPayload(claims.toJson());
+        jws.setKey(signingKey);
+        jws.setAlgorithmHeaderValue(alg);
+        jws.setKeyIdHeaderValue(kid);
+        return jws.getCompactSerialization();
+    }
+}
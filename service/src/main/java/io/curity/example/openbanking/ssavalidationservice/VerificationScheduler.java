@@ -0,0 +1,78 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size pool of worker threads for verifying signatures, so that the CPU-heavy work does not run on the event
+ * loop. The queue in front of the workers is bounded, and work that does not fit is rejected immediately with a
+ * {@link RejectedExecutionException} instead of waiting.
+ */
+public class VerificationScheduler implements MeterBinder, DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    public VerificationScheduler(int threads, int queueSize) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new VerificationThreadFactory(),
+                (task, executor) -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("The verification queue is full");
+                });
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    // Publishes the executor.* metrics of the pool, tagged with name=ssa.verification, and the number of rejections
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new ExecutorServiceMetrics(executor, "ssa.verification", Tags.empty()).bindTo(registry);
+        FunctionCounter.builder("ssa.verification.rejected", rejected, LongAdder::sum)
+                .description("Verifications rejected because the queue was full")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static class VerificationThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ssa-verification-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
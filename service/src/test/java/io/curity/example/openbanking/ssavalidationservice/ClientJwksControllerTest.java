@@ -0,0 +1,34 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Clock;
+import java.time.Duration;
+
+class ClientJwksControllerTest {
+
+    private static final String jwks = "{\"keys\": []}";
+    private static final String jwksUri = "https://keystore.example.com/client/application.jwks";
+
+    @Test
+    public void serveOnlyPrefetchedKeySets() {
+        ClientJwksCache clientJwksCache = new ClientJwksCache(uri -> JwksFetcher.of(jwks), Runnable::run, 10,
+                Duration.ofMinutes(5), 1, Clock.systemUTC());
+        WebTestClient webClient = WebTestClient.bindToController(new ClientJwksController(clientJwksCache)).build();
+
+        webClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/clients/jwks").queryParam("jwks_uri", jwksUri).build())
+                .exchange()
+                .expectStatus().isNotFound();
+
+        clientJwksCache.prefetch(jwksUri);
+        webClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/clients/jwks").queryParam("jwks_uri", jwksUri).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(HttpHeaders.CACHE_CONTROL)
+                .expectBody(String.class).isEqualTo(jwks);
+    }
+}
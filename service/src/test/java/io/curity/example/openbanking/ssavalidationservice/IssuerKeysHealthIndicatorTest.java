@@ -0,0 +1,97 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.jose4j.jwk.JsonWebKey;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+class IssuerKeysHealthIndicatorTest {
+
+    @Test
+    public void loadAllIssuersWithinOneDeadline() {
+        // Neither load ever completes, so waiting for them one after the other would take twice the timeout
+        JwksCache first = Mockito.mock(JwksCache.class);
+        Mockito.when(first.getVerificationKeys()).thenReturn(new CompletableFuture<>());
+        JwksCache second = Mockito.mock(JwksCache.class);
+        Mockito.when(second.getVerificationKeys()).thenReturn(new CompletableFuture<>());
+        IssuerKeysHealthIndicator indicator = new IssuerKeysHealthIndicator(
+                registry(first, second), Duration.ofMillis(500), true);
+
+        long start = System.nanoTime();
+        indicator.run(new DefaultApplicationArguments());
+
+        Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofMillis(900)) < 0);
+        Mockito.verify(first).getVerificationKeys();
+        Mockito.verify(second).getVerificationKeys();
+    }
+
+    @Test
+    public void downUntilAllIssuersHaveKeys() {
+        JwksCache loaded = Mockito.mock(JwksCache.class);
+        Mockito.when(loaded.getVerificationKeys())
+                .thenReturn(CompletableFuture.completedFuture(new VerificationKeys(List.<JsonWebKey>of())));
+        Mockito.when(loaded.getKeySetAge()).thenReturn(Duration.ZERO);
+        JwksCache failing = Mockito.mock(JwksCache.class);
+        Mockito.when(failing.getVerificationKeys())
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Unreachable")));
+        Mockito.when(failing.getKeySetAge()).thenReturn(null);
+        Mockito.when(failing.getMinRefreshInterval()).thenReturn(Duration.ofHours(1));
+        IssuerKeysHealthIndicator indicator = new IssuerKeysHealthIndicator(
+                registry(loaded, failing), Duration.ofSeconds(1), true);
+
+        indicator.run(new DefaultApplicationArguments());
+        for (int i = 0; i < 10; i++) {
+            Health health = indicator.health();
+            Assertions.assertEquals(Status.DOWN, health.getStatus());
+            Assertions.assertEquals(List.of("Issuer 2"), health.getDetails().get("issuersWithoutKeys"));
+        }
+        // The health checks only read the cache, they never start a fetch themselves
+        Mockito.verify(failing, Mockito.times(1)).getVerificationKeys();
+
+        Mockito.when(failing.getKeySetAge()).thenReturn(Duration.ZERO);
+        Assertions.assertEquals(Status.UP, indicator.health().getStatus());
+    }
+
+    @Test
+    public void retryFailedLoadsInTheBackground() {
+        JwksCache recovering = Mockito.mock(JwksCache.class);
+        Mockito.when(recovering.getVerificationKeys())
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Unreachable")))
+                .thenReturn(CompletableFuture.completedFuture(new VerificationKeys(List.<JsonWebKey>of())));
+        Mockito.when(recovering.getMinRefreshInterval()).thenReturn(Duration.ZERO);
+        JwksCache loaded = Mockito.mock(JwksCache.class);
+        Mockito.when(loaded.getVerificationKeys())
+                .thenReturn(CompletableFuture.completedFuture(new VerificationKeys(List.<JsonWebKey>of())));
+
+        new IssuerKeysHealthIndicator(registry(loaded, recovering), Duration.ofSeconds(1), true)
+                .run(new DefaultApplicationArguments());
+
+        Mockito.verify(recovering, Mockito.timeout(5000).times(2)).getVerificationKeys();
+        Mockito.verify(loaded, Mockito.after(1500).times(1)).getVerificationKeys();
+    }
+
+    @Test
+    public void leaveKeysToFirstRequestsWithoutPreload() {
+        JwksCache first = Mockito.mock(JwksCache.class);
+        JwksCache second = Mockito.mock(JwksCache.class);
+        IssuerKeysHealthIndicator indicator = new IssuerKeysHealthIndicator(
+                registry(first, second), Duration.ofSeconds(1), false);
+
+        indicator.run(new DefaultApplicationArguments());
+        Assertions.assertEquals(Status.UP, indicator.health().getStatus());
+        Mockito.verifyNoInteractions(first, second);
+    }
+
+    private static IssuerRegistry registry(JwksCache first, JwksCache second) {
+        return new IssuerRegistry(List.of(
+                new TrustedIssuer("Issuer 1", new SsaValidator("Issuer 1", 5*60), first),
+                new TrustedIssuer("Issuer 2", new SsaValidator("Issuer 2", 5*60), second)));
+    }
+}
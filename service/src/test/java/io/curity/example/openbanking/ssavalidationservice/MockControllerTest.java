@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -36,6 +37,12 @@ class MockControllerTest {
                             Assertions.fail("Returned invalid json web key set.");
                         }
                     });
+
+        String etag = webClient.get().uri("/jwks").exchange()
+                .expectHeader().exists(HttpHeaders.ETAG)
+                .returnResult(String.class).getResponseHeaders().getETag();
+        webClient.get().uri("/jwks").ifNoneMatch(etag).exchange()
+                .expectStatus().isNotModified();
     }
 
     @Test
@@ -69,4 +76,34 @@ class MockControllerTest {
         });
     }
 
-}
\ No newline at end of file
+    @Test
+    void getSoftwareStatements() throws JoseException {
+        JsonWebKeySet jwks = new JsonWebKeySet(webClient.get().uri("/jwks").exchange()
+                .expectBody(String.class).returnResult().getResponseBody());
+        JwtConsumer consumer = new JwtConsumerBuilder()
+                .setVerificationKey(jwks.getJsonWebKeys().get(0).getKey())
+                .setExpectedIssuer("Regulatory Body")
+                .build();
+
+        String valid = webClient.get().uri("/softwarestatements?count=3").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+        String[] validSsas = valid.split("\n");
+        Assertions.assertEquals(3, validSsas.length);
+        for (String ssa : validSsas) {
+            Assertions.assertDoesNotThrow(() -> consumer.processToClaims(ssa));
+        }
+
+        String invalid = webClient.get().uri("/softwarestatements?count=3&invalid=signature,issuer").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+        for (String ssa : invalid.split("\n")) {
+            Assertions.assertThrows(InvalidJwtException.class, () -> consumer.processToClaims(ssa));
+        }
+
+        webClient.get().uri("/softwarestatements?count=3&invalid=unknown").exchange()
+                .expectStatus().isBadRequest();
+        webClient.get().uri("/softwarestatements?count=0").exchange()
+                .expectStatus().isBadRequest();
+    }
+}
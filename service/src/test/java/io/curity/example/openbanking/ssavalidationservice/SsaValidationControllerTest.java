@@ -1,6 +1,5 @@
 package io.curity.example.openbanking.ssavalidationservice;
 
-import org.jose4j.jwk.HttpsJwks;
 import org.jose4j.jwk.JsonWebKey;
 import org.jose4j.jwk.JsonWebKeySet;
 import org.jose4j.jwk.PublicJsonWebKey;
@@ -12,12 +11,17 @@ import org.jose4j.jwt.consumer.InvalidJwtException;
 import org.jose4j.jwt.consumer.JwtConsumer;
 import org.jose4j.jwt.consumer.JwtConsumerBuilder;
 import org.jose4j.lang.JoseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -28,6 +32,12 @@ import java.io.IOException;
 import java.security.Key;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 @ExtendWith(SpringExtension.class)
 @ContextConfiguration(classes = SsaValidationServiceApplication.class)
@@ -35,11 +45,18 @@ import java.time.Instant;
 public class SsaValidationControllerTest {
 
     @MockBean
-    HttpsJwks httpsJwks;
+    IssuerRegistry issuerRegistry;
+
+    @MockBean
+    VerificationScheduler verificationScheduler;
 
     @Autowired
     private WebTestClient webClient;
 
+    // One line of the NDJSON response of /validate/batch
+    private static final ParameterizedTypeReference<Map<String, Object>> batchResultType =
+            new ParameterizedTypeReference<>() {};
+
     private static final String issuerJwks = "{" +
             "\"keys\": [" +
                 "{"+
@@ -71,12 +88,33 @@ public class SsaValidationControllerTest {
 
     private static final String jwtSsa = "eyJraWQiOiJzaWduZXIiLCJhbGciOiJQUzI1NiIsInR5cCI6IkpXVCJ9.eyJpc3MiOiJSZWd1bGF0b3J5IEJvZHkiLCJpYXQiOjE2NTU4MzUyODIsInNvZnR3YXJlX2lkIjoiZDA3NTU0ODktNGQ4YS00ZWZkLWFlZDAtN2RhMmJkM2Y4ZWRjIiwic29mdHdhcmVfY2xpZW50X2lkIjoiSk5BOXItZHVTNHVDekw4OXoiLCJzb2Z0d2FyZV9jbGllbnRfbmFtZSI6IlRlc3QgQ2xpZW50IDEiLCJzb2Z0d2FyZV9jbGllbnRfdXJpIjoiaHR0cHM6Ly9sb2NhbGhvc3QvdGVzdGNsaWVudCIsInNvZnR3YXJlX2xvZ29fdXJpIjoiaHR0cHM6Ly9sb2NhbGhvc3QiLCJzb2Z0d2FyZV90b3NfdXJpIjoiaHR0cHM6Ly9sb2NhbGhvc3QvdG9zIiwic29mdHdhcmVfcG9saWN5X3VyaSI6Imh0dHBzOi8vbG9jYWxob3N0L3BvbGljeSIsInNvZnR3YXJlX3JlZGlyZWN0X3VyaXMiOlsiaHR0cHM6Ly90cHAubG9jYWxob3N0L2NiIiwiaHR0cHM6Ly9sb2NhbGhvc3Q6ODQ0My90ZXN0L2NhbGxiYWNrIl0sInNvZnR3YXJlX2p3a3NfdXJpIjoiaHR0cHM6Ly9rZXlzdG9yZS5yZWd1bGF0b3J5LmJvZHkvYzZmNjk5N2MtMDc5ZC00ZmRjLTllZDctOWE2YjM0NTdhOTQyL2QwNzU1NDg5LTRkOGEtNGVmZC1hZWQwLTdkYTJiZDNmOGVkYy9hcHBsaWNhdGlvbi5qd2tzIiwic29mdHdhcmVfZW52aXJvbm1lbnQiOiJUZXN0Iiwic29mdHdhcmVfdmVyc2lvbiI6IjAuMTAiLCJzb2Z0d2FyZV9yb2xlcyI6WyJSb2xlMSIsIlJvbGUyIl0sIm9yZ19pZCI6ImM2ZjY5OTdjLTA3OWQtNGZkYy05ZWQ3LTlhNmIzNDU3YTk0MiIsIm9yZ19udW1iZXIiOiIxODcxNjc5ODQ3Iiwib3JnX25hbWUiOiJUZXN0aW5nIENvbXBhbnkifQ.DhuSG2Mdaekh1S0kvSiTVsfHiO20SUaUG3iTe16OnCNV1clLb7qSyI0AodTbfOzYKgELEdopz1cKSFDsmXb6kdF6n5CgDFGhU0P2oPMXM4GwnMGXwIyzsnzuNmESN0uZo8QngeA3WJs1Dr6nPXt_jubbttRrCYfGninxkrhWOT09UZOnADZ96j-9N-_wWs3gF6ZMaoWiDtXKDnWG7WSYbMSP1O91pcIQfud_0NHEC-s1qhtbUK1jCPfSk4DPoMdFEBiBxl8ED-fBk7I1NoepohtPgdReFrOEItwZFO7SdZlh75MaEgCXnfzsgi8tSJwUS7LF6-wUaSrNVYtpmO7iR35AT3qlTHU3KgtHKRTZ4Z48zPRK1dNOCCVGjf-Juv-TTz8t70piTIJrIMLOqnwsLdIuZzR1Ld5OrVv3AobNHSD2-eej1DHS3-Ed9dojiirb3VR07PyFucjMxHpNxZo4t6Epp27kmAMARjaxv7R7n9p7QoaOoq0tAIXxkBRpkKV_uOqluEF_S0hBSB1Jlo3mSM6GhGD6ZBqXuBsjwnqn9MnPcE-qQbTwCm2c-RFNvsQnbZSPAweBh8ADnYYzrVjgg9PnKwn4Q5se2g6YmZZFd2hXzl4mR_VILEVpEjfiPFgXD7EIeP0Gs6lIuMYTEqgTVrn94rzqtUEE_IYQbtk5Ink";
 
+    @BeforeEach
+    public void setUp() throws JoseException, InvalidJwtException {
+        // The issuer only publishes demo-key, the other key is used for signing tokens with an unknown kid
+        JsonWebKey publishedKey = new JsonWebKeySet(issuerJwks).findJsonWebKey("demo-key", null, null, null);
+        JwksCache jwksCache = Mockito.mock(JwksCache.class);
+        Mockito.when(jwksCache.getVerificationKeys(Mockito.any())).thenReturn(CompletableFuture.completedFuture(new VerificationKeys(List.of(publishedKey))));
+
+        // A second issuer that signs with RS256 and publishes the other key
+        JsonWebKey otherIssuerKey = new JsonWebKeySet(issuerJwks).findJsonWebKey("unknown-key", null, null, null);
+        JwksCache otherJwksCache = Mockito.mock(JwksCache.class);
+        Mockito.when(otherJwksCache.getVerificationKeys(Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(new VerificationKeys(List.of(otherIssuerKey))));
+
+        IssuerRegistry registry = new IssuerRegistry(List.of(
+                new TrustedIssuer("Regulatory Body",
+                        new SsaValidator("Regulatory Body", 5*60, AlgorithmIdentifiers.RSA_PSS_USING_SHA256), jwksCache),
+                new TrustedIssuer("Other Regulator",
+                        new SsaValidator("Other Regulator", 5*60, AlgorithmIdentifiers.RSA_USING_SHA256), otherJwksCache)));
+        Mockito.when(issuerRegistry.getIssuer(Mockito.any()))
+                .thenAnswer(invocation -> registry.getIssuer(invocation.getArgument(0)));
+        Mockito.when(verificationScheduler.getExecutor()).thenReturn(ForkJoinPool.commonPool());
+    }
+
     @Test
     public void validateJwt() throws InvalidJwtException, JoseException, IOException {
         String validJwt = createJwt("Regulatory Body", "demo-key", Instant.now(Clock.systemUTC()), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
 
-        Mockito.when(httpsJwks.getJsonWebKeys()).thenReturn(new JsonWebKeySet(issuerJwks).getJsonWebKeys());
-
         webClient.post()
                 .uri("/validate")
                 .contentType(MediaType.TEXT_PLAIN)
@@ -107,6 +145,35 @@ public class SsaValidationControllerTest {
                 .expectStatus().isBadRequest();
     }
 
+    @Test
+    public void routeByIssuer() throws InvalidJwtException, JoseException {
+        String otherIssuerJwt = createJwt("Other Regulator", "unknown-key", Instant.now(Clock.systemUTC()), AlgorithmIdentifiers.RSA_USING_SHA256);
+        String otherIssuerJwtWithPs256 = createJwt("Other Regulator", "unknown-key", Instant.now(Clock.systemUTC()), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        String otherIssuerJwtWithDemoKey = createJwt("Other Regulator", "demo-key", Instant.now(Clock.systemUTC()), AlgorithmIdentifiers.RSA_USING_SHA256);
+
+        webClient.post()
+                .uri("/validate")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(BodyInserters.fromValue(otherIssuerJwt))
+                .exchange()
+                .expectStatus().isNoContent();
+
+        // The algorithms and keys of one issuer are not accepted for another
+        webClient.post()
+                .uri("/validate")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(BodyInserters.fromValue(otherIssuerJwtWithPs256))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        webClient.post()
+                .uri("/validate")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(BodyInserters.fromValue(otherIssuerJwtWithDemoKey))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     public void unknownKid() throws InvalidJwtException, JoseException {
         String jwtByUnknownKey = createJwt("Regulatory Body", "unknown-key", Instant.now(Clock.systemUTC()), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
@@ -155,6 +222,95 @@ public class SsaValidationControllerTest {
                 .expectStatus().is4xxClientError();
     }
 
+    @Test
+    public void rejectMalformedBodyEarly() {
+        webClient.post()
+                .uri("/validate")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(BodyInserters.fromValue("{\"alg\":\"none\"}.e30."))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        webClient.post()
+                .uri("/validate")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(BodyInserters.fromValue("a".repeat(CompactJwsReader.DEFAULT_MAX_BYTES + 1)))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    public void rejectWhenOverloaded() throws InvalidJwtException, JoseException {
+        String validJwt = createJwt("Regulatory Body", "demo-key", Instant.now(Clock.systemUTC()), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+
+        Mockito.when(verificationScheduler.getExecutor()).thenReturn(task -> {
+            throw new RejectedExecutionException("The verification queue is full");
+        });
+
+        webClient.post()
+                .uri("/validate")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(BodyInserters.fromValue(validJwt))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+    }
+
+    @Test
+    public void validateBatch() throws InvalidJwtException, JoseException {
+        String validJwt = createJwt("Regulatory Body", "demo-key", Instant.now(Clock.systemUTC()), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        String jwtByUnknownKey = createJwt("Regulatory Body", "unknown-key", Instant.now(Clock.systemUTC()), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+        String tooLarge = "a".repeat(CompactJwsReader.DEFAULT_MAX_BYTES + 1);
+        String batch = validJwt + "\n" + jwtSsa + "\n\nnot-a-jwt\n" + jwtByUnknownKey + "\n" + validJwt + "\n" + tooLarge;
+
+        List<Map<String, Object>> results = webClient.post()
+                .uri("/validate/batch")
+                .contentType(MediaType.TEXT_PLAIN)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(BodyInserters.fromValue(batch))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(batchResultType)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        Map<Integer, Boolean> validByIndex = new HashMap<>();
+        results.forEach(result -> validByIndex.put((Integer) result.get("index"), (Boolean) result.get("valid")));
+        Assertions.assertEquals(Map.of(0, true, 1, false, 3, false, 4, false, 5, true, 6, false), validByIndex);
+        results.stream()
+                .filter(result -> !(Boolean) result.get("valid"))
+                .forEach(result -> Assertions.assertNotNull(result.get("reason")));
+    }
+
+    @Test
+    public void rejectBatchEntriesWhenOverloaded() throws InvalidJwtException, JoseException {
+        String validJwt = createJwt("Regulatory Body", "demo-key", Instant.now(Clock.systemUTC()), AlgorithmIdentifiers.RSA_PSS_USING_SHA256);
+
+        Mockito.when(verificationScheduler.getExecutor()).thenReturn(task -> {
+            throw new RejectedExecutionException("The verification queue is full");
+        });
+
+        List<Map<String, Object>> results = webClient.post()
+                .uri("/validate/batch")
+                .contentType(MediaType.TEXT_PLAIN)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(BodyInserters.fromValue(validJwt + "\nnot-a-jwt\n" + validJwt))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(batchResultType)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        Map<Integer, Object> rejectedByIndex = new HashMap<>();
+        results.forEach(result -> rejectedByIndex.put((Integer) result.get("index"), result.getOrDefault("rejected", false)));
+        Assertions.assertEquals(Map.of(0, true, 1, false, 2, true), rejectedByIndex);
+        results.stream()
+                .filter(result -> result.containsKey("rejected"))
+                .forEach(result -> Assertions.assertEquals("The verification queue is full", result.get("reason")));
+    }
+
     // https://bitbucket.org/b_c/jose4j/wiki/Home
     private static String createJwt(String issuer, String kid, Instant iat, String algorithm) throws InvalidJwtException, JoseException {
 
@@ -0,0 +1,56 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jose4j.jwt.consumer.ErrorCodeValidator;
+import org.jose4j.jwt.consumer.ErrorCodes;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+
+class ValidationMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ValidationMetrics validationMetrics = new ValidationMetrics(registry);
+
+    @Test
+    public void countOutcomesByReason() {
+        validationMetrics.recordValid(false);
+        validationMetrics.recordValid(true);
+        validationMetrics.recordFailure(invalidJwt(ErrorCodes.ISSUER_INVALID));
+        validationMetrics.recordFailure(invalidJwt(ErrorCodes.ISSUED_AT_INVALID_PAST));
+        validationMetrics.recordFailure(invalidJwt(ErrorCodes.ISSUED_AT_INVALID_PAST));
+        validationMetrics.recordFailure(invalidJwt(SsaValidator.ALGORITHM_NOT_PERMITTED));
+        validationMetrics.recordFailure(invalidJwt(SsaValidator.KEY_NOT_FOUND));
+        validationMetrics.recordFailure(invalidJwt(ErrorCodes.SIGNATURE_INVALID));
+        validationMetrics.recordFailure(new RejectedExecutionException());
+
+        Assertions.assertEquals(1, count("valid", "none"));
+        Assertions.assertEquals(1, count("valid", "cached"));
+        Assertions.assertEquals(1, count("invalid", "wrong_issuer"));
+        Assertions.assertEquals(2, count("invalid", "too_old"));
+        Assertions.assertEquals(1, count("invalid", "disallowed_alg"));
+        Assertions.assertEquals(1, count("invalid", "unknown_kid"));
+        Assertions.assertEquals(1, count("invalid", "bad_signature"));
+        Assertions.assertEquals(1, count("rejected", "overloaded"));
+    }
+
+    @Test
+    public void timeStages() {
+        validationMetrics.recordStage(ValidationListener.Stage.SIGNATURE, 1_000_000);
+
+        Assertions.assertEquals(1, registry.get("ssa.validation.stage").tag("stage", "signature").timer().count());
+        Assertions.assertEquals(0, registry.get("ssa.validation.stage").tag("stage", "claims").timer().count());
+    }
+
+    private double count(String outcome, String reason) {
+        return registry.get("ssa.validation.outcome").tag("outcome", outcome).tag("reason", reason).counter().count();
+    }
+
+    private static InvalidJwtException invalidJwt(int errorCode) {
+        return new InvalidJwtException("Invalid JWT",
+                Collections.singletonList(new ErrorCodeValidator.Error(errorCode, "Invalid JWT")), null);
+    }
+}
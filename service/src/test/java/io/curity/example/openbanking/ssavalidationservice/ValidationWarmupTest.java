@@ -0,0 +1,35 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jose4j.lang.JoseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.time.Duration;
+
+class ValidationWarmupTest {
+
+    @Test
+    public void validateSyntheticTokens() throws JoseException {
+        VerificationScheduler verificationScheduler = new VerificationScheduler(1, 16);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        try {
+            new ValidationWarmup(verificationScheduler, meterRegistry, 3, Duration.ZERO)
+                    .run(new DefaultApplicationArguments());
+        } finally {
+            verificationScheduler.destroy();
+        }
+
+        Assertions.assertEquals(1, meterRegistry.get("ssa.warmup").timer().count());
+    }
+
+    @Test
+    public void disabledByDefault() throws JoseException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new ValidationWarmup(null, meterRegistry, 0, Duration.ZERO)
+                .run(new DefaultApplicationArguments());
+        Assertions.assertNull(meterRegistry.find("ssa.warmup").timer());
+    }
+}
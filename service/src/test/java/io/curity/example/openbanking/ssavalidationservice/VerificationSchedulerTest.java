@@ -0,0 +1,48 @@
+package io.curity.example.openbanking.ssavalidationservice;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+class VerificationSchedulerTest {
+
+    @Test
+    public void rejectWhenQueueIsFull() throws InterruptedException, ExecutionException, TimeoutException {
+        VerificationScheduler verificationScheduler = new VerificationScheduler(1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            verificationScheduler.getExecutor().execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            started.await();
+
+            // The only worker is busy, so one task fits into the queue and the next one is rejected
+            CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> "queued",
+                    verificationScheduler.getExecutor());
+            Assertions.assertThrows(RejectedExecutionException.class,
+                    () -> verificationScheduler.getExecutor().execute(() -> { }));
+            Assertions.assertEquals(1, verificationScheduler.getQueueDepth());
+            Assertions.assertEquals(1, verificationScheduler.getActiveWorkers());
+            Assertions.assertEquals(1, verificationScheduler.getRejectedCount());
+
+            release.countDown();
+            Assertions.assertEquals("queued", queued.get(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            verificationScheduler.destroy();
+        }
+    }
+}